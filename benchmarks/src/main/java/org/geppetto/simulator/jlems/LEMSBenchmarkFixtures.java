@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.geppetto.core.model.runtime.ACompositeNode;
+import org.geppetto.core.model.runtime.ANode;
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
+import org.geppetto.core.model.runtime.CompositeNode;
+import org.geppetto.core.model.runtime.EntityNode;
+import org.geppetto.core.model.runtime.VariableNode;
+import org.lemsml.jlems.api.LEMSDocumentReader;
+import org.lemsml.jlems.api.LEMSResultsContainer;
+import org.lemsml.jlems.api.LEMSSimulator;
+import org.lemsml.jlems.api.StateIdentifier;
+import org.lemsml.jlems.api.StateRecord;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.ILEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.ILEMSSimulator;
+import org.lemsml.jlems.api.interfaces.ILEMSStateInstance;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * The models and runtime trees the benchmarks run against. The network fixture is a population of Hodgkin-Huxley cells, a population of one cell is the single HH cell fixture.
+ */
+final class LEMSBenchmarkFixtures
+{
+
+	private static final String NETWORK = "hhnetwork.xml";
+
+	private LEMSBenchmarkFixtures()
+	{
+	}
+
+	/**
+	 * @param cells
+	 *            the number of cells of the network
+	 * @return the parsed network
+	 * @throws Exception
+	 */
+	static ILEMSDocument readNetwork(int cells) throws Exception
+	{
+		String model = readResource(NETWORK).replace("@CELLS@", Integer.toString(cells));
+		return new LEMSDocumentReader().readModel(model);
+	}
+
+	/**
+	 * Builds the document recording the membrane potential of the given number of cells
+	 * 
+	 * @param document
+	 * @param recordedCells
+	 * @return a simulator for every state instance of the target of the document
+	 * @throws Exception
+	 */
+	static List<ILEMSSimulator> createSimulators(ILEMSDocument document, int recordedCells) throws Exception
+	{
+		JLEMSSimulatorService.BuiltModel model = JLEMSSimulatorService.build(document);
+		ILEMSRunConfiguration runConfig = model.getRunConfig();
+		// the membrane potential of the first cell is already recorded by the document
+		for(int i = 1; i < recordedCells; i++)
+		{
+			runConfig.addStateRecord(new StateRecord(new StateIdentifier("hhpop[" + i + "]/v")));
+		}
+		List<ILEMSSimulator> simulators = new ArrayList<ILEMSSimulator>();
+		for(ILEMSStateInstance instance : model.getStateInstances())
+		{
+			ILEMSSimulator simulator = new LEMSSimulator();
+			simulator.initialize(instance, runConfig);
+			simulators.add(simulator);
+		}
+		return simulators;
+	}
+
+	/**
+	 * Advances the simulators by one timestep recording their results
+	 * 
+	 * @param simulators
+	 * @param results
+	 *            the buffer where the results are recorded, its previous content is cleared
+	 * @throws Exception
+	 */
+	static void step(List<ILEMSSimulator> simulators, LEMSResultsBuffer results) throws Exception
+	{
+		results.clear();
+		ILEMSResultsContainer lemsResults = new LEMSResultsContainer();
+		for(ILEMSSimulator simulator : simulators)
+		{
+			simulator.advance(lemsResults);
+		}
+		results.record(lemsResults);
+	}
+
+	/**
+	 * @return the aspect of a new entity, its simulation tree is empty until variables are added to it
+	 */
+	static AspectNode createAspect()
+	{
+		EntityNode entity = new EntityNode("network");
+		AspectNode aspect = new AspectNode("electrical");
+		entity.getAspects().add(aspect);
+		aspect.setParent(entity);
+		return aspect;
+	}
+
+	/**
+	 * Adds to the simulation tree of the aspect a watched variable for every state of the results, as the watch feature does before the states are simulated. The tree builder and the watch plan
+	 * only act on the variables which already exist in the tree.
+	 * 
+	 * @param results
+	 * @param aspect
+	 * @return the number of variables added
+	 */
+	static int addWatchedVariables(LEMSResultsBuffer results, AspectNode aspect)
+	{
+		LEMSPathResolver pathResolver = new LEMSPathResolver();
+		AspectSubTreeNode simulationTree = aspect.getSubTree(AspectTreeType.SIMULATION_TREE);
+		Map<ACompositeNode, Map<String, ANode>> children = new IdentityHashMap<ACompositeNode, Map<String, ANode>>();
+		int added = 0;
+		for(IStateIdentifier state : results.getStates())
+		{
+			String statePath = state.getStatePath().replace("/", ".");
+			AspectSubTreeNode stateTree = pathResolver.resolve(statePath, simulationTree);
+			if(stateTree == null)
+			{
+				continue;
+			}
+			String post = pathResolver.getGeppettoPath(statePath, simulationTree).substring(stateTree.getInstancePath().length() + 1);
+			ACompositeNode current = stateTree;
+			StringTokenizer tokenizer = new StringTokenizer(post, ".");
+			while(tokenizer.hasMoreTokens())
+			{
+				String id = tokenizer.nextToken();
+				Map<String, ANode> currentChildren = children.get(current);
+				if(currentChildren == null)
+				{
+					currentChildren = new HashMap<String, ANode>();
+					children.put(current, currentChildren);
+				}
+				ANode child = currentChildren.get(id);
+				if(child == null)
+				{
+					if(tokenizer.hasMoreTokens())
+					{
+						child = new CompositeNode(id);
+					}
+					else
+					{
+						VariableNode variable = new VariableNode(id);
+						variable.setWatched(true);
+						child = variable;
+						added++;
+					}
+					child.setId(id);
+					current.addChild(child);
+					currentChildren.put(id, child);
+				}
+				if(child instanceof ACompositeNode)
+				{
+					current = (ACompositeNode) child;
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Adds a watched variable for every state of the results and maps them to the states
+	 * 
+	 * @param results
+	 * @param aspect
+	 * @param pathResolver
+	 *            where the paths of the states are resolved
+	 * @throws IllegalStateException
+	 *             if a variable isn't mapped to its state, the benchmarks would otherwise measure fewer watched variables than they claim
+	 */
+	static void watchAll(LEMSResultsBuffer results, AspectNode aspect, LEMSPathResolver pathResolver)
+	{
+		int added = addWatchedVariables(results, aspect);
+		new LEMSSimulationTreeBuilder().build(results, aspect, pathResolver, new LEMSChangeTracker());
+		int watched = compileWatchPlan(aspect, pathResolver).size();
+		if(added == 0 || watched != added)
+		{
+			throw new IllegalStateException(added + " variables added to the tree but " + watched + " watched");
+		}
+	}
+
+	/**
+	 * @param aspect
+	 * @param pathResolver
+	 * @return the compiled plan of the watched variables of the aspect
+	 */
+	static LEMSWatchPlan compileWatchPlan(AspectNode aspect, LEMSPathResolver pathResolver)
+	{
+		LEMSWatchPlan watchPlan = new LEMSWatchPlan();
+		aspect.getParent().apply(new CreateLEMSWatchPlanVisitor(watchPlan, aspect, pathResolver.getGeppettoToLems(aspect)));
+		watchPlan.compile(null);
+		return watchPlan;
+	}
+
+	/**
+	 * @param name
+	 * @return the content of the resource
+	 * @throws IOException
+	 */
+	private static String readResource(String name) throws IOException
+	{
+		InputStream in = LEMSBenchmarkFixtures.class.getClassLoader().getResourceAsStream(name);
+		if(in == null)
+		{
+			throw new IOException("Fixture not found: " + name);
+		}
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, read);
+			}
+			return out.toString("UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
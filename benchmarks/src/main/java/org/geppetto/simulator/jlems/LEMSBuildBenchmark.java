@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.lemsml.jlems.api.LEMSBuildConfiguration;
+import org.lemsml.jlems.api.LEMSBuildOptions;
+import org.lemsml.jlems.api.LEMSBuildOptionsEnum;
+import org.lemsml.jlems.api.LEMSBuilder;
+import org.lemsml.jlems.api.LEMSDocumentReader;
+import org.lemsml.jlems.api.interfaces.ILEMSBuildOptions;
+import org.lemsml.jlems.api.interfaces.ILEMSBuilder;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+import org.lemsml.jlems.api.interfaces.ILEMSStateInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building and flattening a model as done by initialize, compared with the build of the first versions of the simulator which always built the default target and then the target of the
+ * document. The peak of the heap during every iteration is printed, run with -prof gc for the bytes allocated by every build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LEMSBuildBenchmark
+{
+
+	@Param({ "1", "1000" })
+	public int cells;
+
+	private ILEMSDocument _document;
+
+	/**
+	 * The highest heap usage reached during an iteration
+	 */
+	@State(Scope.Thread)
+	public static class HeapPeak
+	{
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			System.gc();
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				if(pool.getType() == MemoryType.HEAP)
+				{
+					pool.resetPeakUsage();
+				}
+			}
+		}
+
+		@TearDown(Level.Iteration)
+		public void report()
+		{
+			long peak = 0;
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				if(pool.getType() == MemoryType.HEAP)
+				{
+					peak += pool.getPeakUsage().getUsed();
+				}
+			}
+			System.out.println("peak heap: " + peak / (1024 * 1024) + "MB");
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception
+	{
+		_document = LEMSBenchmarkFixtures.readNetwork(cells);
+	}
+
+	@Benchmark
+	public Object build(HeapPeak heapPeak) throws Exception
+	{
+		return JLEMSSimulatorService.build(_document);
+	}
+
+	@Benchmark
+	public Object doubleBuild(HeapPeak heapPeak) throws Exception
+	{
+		ILEMSBuilder builder = new LEMSBuilder();
+		builder.addDocument(_document);
+		ILEMSBuildOptions options = new LEMSBuildOptions();
+		options.addBuildOption(LEMSBuildOptionsEnum.FLATTEN);
+		// pre-build to read the run configuration and the target, then the real build of the target
+		builder.build(new LEMSBuildConfiguration(), options);
+		LEMSDocumentReader.getLEMSRunConfiguration(_document);
+		Collection<ILEMSStateInstance> stateInstances = builder.build(new LEMSBuildConfiguration(LEMSDocumentReader.getTarget(_document)), options);
+		return stateInstances;
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geppetto.core.model.runtime.AspectNode;
+import org.lemsml.jlems.api.interfaces.ILEMSSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The latency of the work simulate does for one step: advancing jLEMS, recording its results and adding them to the watched variables. The service itself isn't driven, it needs the
+ * Geppetto runtime to provide its models and listener, the same classes are called directly instead. Every step adds a quantity to every watched variable, the tree is therefore created
+ * again before each batch of steps so that the benchmark doesn't measure an ever growing tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 100)
+@Measurement(iterations = 20, batchSize = 100)
+@Fork(1)
+public class LEMSSimulateBenchmark
+{
+
+	@Param({ "1", "100", "10000" })
+	public int watched;
+
+	private List<ILEMSSimulator> _simulators;
+	private LEMSResultsBuffer _results = new LEMSResultsBuffer(1);
+	private LEMSWatchPlan _watchPlan;
+	private LEMSChangeTracker _changeTracker;
+
+	@Setup(Level.Trial)
+	public void setupSimulators() throws Exception
+	{
+		_simulators = LEMSBenchmarkFixtures.createSimulators(LEMSBenchmarkFixtures.readNetwork(watched), watched);
+		LEMSBenchmarkFixtures.step(_simulators, _results);
+	}
+
+	@Setup(Level.Iteration)
+	public void setupTree()
+	{
+		AspectNode aspect = LEMSBenchmarkFixtures.createAspect();
+		LEMSPathResolver pathResolver = new LEMSPathResolver();
+		LEMSBenchmarkFixtures.watchAll(_results, aspect, pathResolver);
+		_watchPlan = LEMSBenchmarkFixtures.compileWatchPlan(aspect, pathResolver);
+		_changeTracker = new LEMSChangeTracker();
+	}
+
+	@Benchmark
+	public LEMSResultsBuffer step() throws Exception
+	{
+		LEMSBenchmarkFixtures.step(_simulators, _results);
+		return _results;
+	}
+
+	@Benchmark
+	public LEMSChangeTracker stepAndUpdateTree() throws Exception
+	{
+		LEMSBenchmarkFixtures.step(_simulators, _results);
+		_watchPlan.update(_results, _changeTracker);
+		_changeTracker.propagate();
+		return _changeTracker;
+	}
+}
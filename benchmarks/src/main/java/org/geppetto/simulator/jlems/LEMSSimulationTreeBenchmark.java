@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving the paths of the LEMS states to the simulation tree and the two tree visitors, the one mapping the watched variables to the states and the one collecting the watched variables.
+ * The tree holds a watched variable for every state, as it does once the user has watched them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LEMSSimulationTreeBenchmark
+{
+
+	@Param({ "100", "10000" })
+	public int states;
+
+	private LEMSResultsBuffer _results = new LEMSResultsBuffer(1);
+	private List<String> _statePaths = new ArrayList<String>();
+	private AspectNode _watchedAspect;
+	private LEMSPathResolver _watchedPathResolver;
+	private AspectNode _unmappedAspect;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		LEMSBenchmarkFixtures.step(LEMSBenchmarkFixtures.createSimulators(LEMSBenchmarkFixtures.readNetwork(states), states), _results);
+		for(IStateIdentifier state : _results.getStates())
+		{
+			_statePaths.add(state.getStatePath().replace("/", "."));
+		}
+		_watchedAspect = LEMSBenchmarkFixtures.createAspect();
+		_watchedPathResolver = new LEMSPathResolver();
+		LEMSBenchmarkFixtures.watchAll(_results, _watchedAspect, _watchedPathResolver);
+	}
+
+	@Benchmark
+	public LEMSPathResolver resolvePaths()
+	{
+		LEMSPathResolver pathResolver = new LEMSPathResolver();
+		AspectSubTreeNode simulationTree = LEMSBenchmarkFixtures.createAspect().getSubTree(AspectTreeType.SIMULATION_TREE);
+		for(String statePath : _statePaths)
+		{
+			pathResolver.resolve(statePath, simulationTree);
+		}
+		return pathResolver;
+	}
+
+	@Benchmark
+	public LEMSPathResolver resolvePathsMemoized()
+	{
+		AspectSubTreeNode simulationTree = _watchedAspect.getSubTree(AspectTreeType.SIMULATION_TREE);
+		for(String statePath : _statePaths)
+		{
+			_watchedPathResolver.resolve(statePath, simulationTree);
+		}
+		return _watchedPathResolver;
+	}
+
+	@Setup(Level.Invocation)
+	public void setupUnmappedAspect()
+	{
+		_unmappedAspect = LEMSBenchmarkFixtures.createAspect();
+		LEMSBenchmarkFixtures.addWatchedVariables(_results, _unmappedAspect);
+	}
+
+	@Benchmark
+	public AspectNode createSimulationTree()
+	{
+		new LEMSSimulationTreeBuilder().build(_results, _unmappedAspect, new LEMSPathResolver(), new LEMSChangeTracker());
+		return _unmappedAspect;
+	}
+
+	@Benchmark
+	public LEMSWatchPlan createWatchPlan()
+	{
+		return LEMSBenchmarkFixtures.compileWatchPlan(_watchedAspect, _watchedPathResolver);
+	}
+}
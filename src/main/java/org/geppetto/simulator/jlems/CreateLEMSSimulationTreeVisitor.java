@@ -32,6 +32,10 @@
  *******************************************************************************/
 package org.geppetto.simulator.jlems;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.geppetto.core.model.quantities.Quantity;
@@ -42,38 +46,47 @@ import org.geppetto.core.model.runtime.CompositeNode;
 import org.geppetto.core.model.runtime.VariableNode;
 import org.geppetto.core.model.state.visitors.RuntimeTreeVisitor;
 import org.geppetto.core.model.values.ValuesFactory;
-import org.lemsml.jlems.api.ALEMSValue;
-import org.lemsml.jlems.api.LEMSDoubleValue;
-import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
 import org.lemsml.jlems.api.interfaces.IStateIdentifier;
 
 /**
  * @author Adrian Quintana (adrian.perez@ucl.ac.uk)
  * 
- *         This visitor creates a simulation tree in the runtime model.
+ *         This visitor creates a simulation tree in the runtime model. The
+ *         variables of all the states are found in a single visit, the nodes
+ *         are then created by createNodes once the visit is over.
  * 
  * 
  */
 public class CreateLEMSSimulationTreeVisitor extends RuntimeTreeVisitor
 {
 
-	private ILEMSResultsContainer _lemsResults;
-	String _variablePath;
+	private LEMSResultsBuffer _lemsResults;
 	AspectSubTreeNode _simulationTree;
-	IStateIdentifier _state;
+	Map<String, IStateIdentifier> _states;
+	Map<ACompositeNode, Map<String, ANode>> _children;
+	List<String> _foundPaths = new ArrayList<String>();
+	List<VariableNode> _createdNodes = new ArrayList<VariableNode>();
 
 	public CreateLEMSSimulationTreeVisitor()
 	{
 		super();
 	}
 
-	public CreateLEMSSimulationTreeVisitor(ILEMSResultsContainer lemsResults, AspectSubTreeNode simulationTree, IStateIdentifier state, String variablePath)
+	/**
+	 * @param lemsResults
+	 * @param simulationTree
+	 * @param states
+	 *            the states for which nodes have to be created, by the instance path of their variable
+	 * @param children
+	 *            the children of the composite nodes by id, shared by the visitors working on the same tree
+	 */
+	public CreateLEMSSimulationTreeVisitor(LEMSResultsBuffer lemsResults, AspectSubTreeNode simulationTree, Map<String, IStateIdentifier> states, Map<ACompositeNode, Map<String, ANode>> children)
 	{
 		super();
 		this._lemsResults = lemsResults;
 		this._simulationTree = simulationTree;
-		this._state = state;
-		this._variablePath = variablePath;
+		this._states = states;
+		this._children = children;
 	}
 
 	/*
@@ -96,72 +109,123 @@ public class CreateLEMSSimulationTreeVisitor extends RuntimeTreeVisitor
 	@Override
 	public boolean visitVariableNode(VariableNode node)
 	{
+		if(this._states.containsKey(node.getInstancePath()))
+		{
+			// the tree can't be modified while it's visited
+			this._foundPaths.add(node.getInstancePath());
+		}
+		return super.visitVariableNode(node);
+	}
+
+	/**
+	 * Creates the nodes of the variables found during the visit
+	 * 
+	 * @return the states for which nodes were created
+	 */
+	public List<IStateIdentifier> createNodes()
+	{
+		List<IStateIdentifier> created = new ArrayList<IStateIdentifier>();
+		for(String variablePath : this._foundPaths)
+		{
+			IStateIdentifier state = this._states.get(variablePath);
+			createNodes(variablePath, state);
+			created.add(state);
+		}
+		this._foundPaths.clear();
+		return created;
+	}
 
-		if(node.getInstancePath().equals(this._variablePath))
+	/**
+	 * @param variablePath
+	 * @param state
+	 */
+	private void createNodes(String variablePath, IStateIdentifier state)
+	{
+		String post = variablePath.replace(this._simulationTree.getInstancePath(), "");
+		StringTokenizer tokenizer = new StringTokenizer(post, ".");
+		ACompositeNode currentNode = this._simulationTree;
+		while(tokenizer.hasMoreElements())
 		{
-			String post = this._variablePath.replace(this._simulationTree.getInstancePath(), "");
-			StringTokenizer tokenizer = new StringTokenizer(post, ".");
-			ACompositeNode currentNode = this._simulationTree;
-			while(tokenizer.hasMoreElements())
+			String current = tokenizer.nextToken();
+			Map<String, ANode> children = getChildren(currentNode);
+			ANode child = children.get(current);
+			if(child != null)
 			{
-				String current = tokenizer.nextToken();
-				boolean found = false;
-				for(ANode child : currentNode.getChildren())
+				if(child instanceof ACompositeNode)
 				{
-					if(child.getId().equals(current))
-					{
-						if(child instanceof ACompositeNode)
-						{
-							currentNode = (ACompositeNode) child;
-						}
-						found = true;
-						break;
-					}
+					currentNode = (ACompositeNode) child;
 				}
-				if(found)
+				continue;
+			}
+			else
+			{
+				if(tokenizer.hasMoreElements())
 				{
-					continue;
+					// not a leaf, create a composite state node
+					CompositeNode newNode = new CompositeNode(current);
+					newNode.setId(current);
+					currentNode.addChild(newNode);
+					children.put(current, newNode);
+					currentNode = newNode;
 				}
 				else
 				{
-					if(tokenizer.hasMoreElements())
+					// it's a leaf node
+					VariableNode newNode = new VariableNode(current);
+					newNode.setId(current);
+					// units are cached by dimension, setting them costs a lookup per variable
+					String dimension = this._lemsResults.getDimension(state);
+					if(dimension != null)
 					{
-						// not a leaf, create a composite state node
-						CompositeNode newNode = new CompositeNode(current);
-						newNode.setId(current);
-						currentNode.addChild(newNode);
-						currentNode = newNode;
+						newNode.setUnit(LEMSUnits.getUnit(dimension).toString());
+						newNode.setScalingFactor(LEMSUnits.getScalingFactor(dimension));
 					}
-					else
+					double[] values = this._lemsResults.getValues(state);
+					for(int i = 0; i < this._lemsResults.getSteps(); i++)
 					{
-						// it's a leaf node
-						VariableNode newNode = new VariableNode(current);
-						newNode.setId(current);
-						// commenting out until it's working
-						/*
-						 * Unit<? extends Quantity> unit = getUnitFromLEMSDimension (results.getStates ().get(state).getDimension()); newNode.setUnit(unit.toString());
-						 * 
-						 * UnitConverter r = unit.getConverterTo(unit .getStandardUnit());
-						 * 
-						 * long factor = 0; if(r instanceof RationalConverter ){ factor = ((RationalConverter) r).getDivisor(); }
-						 * 
-						 * newNode.setScalingFactor(_df.format(factor ));
-						 */
-						ALEMSValue lemsValue = this._lemsResults.getStates().get(this._state).getLastValue();
-						if(lemsValue instanceof LEMSDoubleValue)
+						if(!Double.isNaN(values[i]))
 						{
 							Quantity quantity = new Quantity();
-							LEMSDoubleValue db = (LEMSDoubleValue) lemsValue;
-
-							quantity.setValue(ValuesFactory.getDoubleValue(db.getAsDouble()));
+							quantity.setValue(ValuesFactory.getDoubleValue(values[i]));
 							newNode.addQuantity(quantity);
 						}
-						currentNode.addChild(newNode);
 					}
+					currentNode.addChild(newNode);
+					children.put(current, newNode);
+					this._createdNodes.add(newNode);
 				}
 			}
 		}
-		return super.visitVariableNode(node);
+	}
+
+	/**
+	 * @return the variable nodes created by createNodes
+	 */
+	public List<VariableNode> getCreatedNodes()
+	{
+		return this._createdNodes;
+	}
+
+	/**
+	 * @param node
+	 * @return the children of the node by id, indexed the first time they are needed
+	 */
+	private Map<String, ANode> getChildren(ACompositeNode node)
+	{
+		Map<String, ANode> children = this._children.get(node);
+		if(children == null)
+		{
+			children = new HashMap<String, ANode>();
+			for(ANode child : node.getChildren())
+			{
+				if(!children.containsKey(child.getId()))
+				{
+					children.put(child.getId(), child);
+				}
+			}
+			this._children.put(node, children);
+		}
+		return children;
 	}
 
 }
@@ -34,36 +34,28 @@ package org.geppetto.simulator.jlems;
 
 import java.util.Map;
 
-import org.geppetto.core.model.quantities.Quantity;
 import org.geppetto.core.model.runtime.AspectNode;
 import org.geppetto.core.model.runtime.AspectSubTreeNode;
 import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
-import org.geppetto.core.model.runtime.EntityNode;
 import org.geppetto.core.model.runtime.VariableNode;
 import org.geppetto.core.model.state.visitors.RuntimeTreeVisitor;
-import org.geppetto.core.model.values.DoubleValue;
-import org.lemsml.jlems.api.ALEMSValue;
-import org.lemsml.jlems.api.LEMSDoubleValue;
 import org.lemsml.jlems.api.StateIdentifier;
-import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
 
 /**
- * @author matteocantarelli
- * 
- *         This method updates the particles already present in the tree adding
- *         new values as found on the position pointer
+ * This visitor finds the watched variables of an aspect and adds them to a watch plan. It runs once every time the watch list changes, the values are then added at every step by the plan.
  */
-public class UpdateLEMSimulationTreeVisitor extends RuntimeTreeVisitor {
+public class CreateLEMSWatchPlanVisitor extends RuntimeTreeVisitor
+{
 
-	private ILEMSResultsContainer _lemsResults;
+	private LEMSWatchPlan _watchPlan;
 	private String _errorMessage = null;
 	private Map<String, String> _geppettoToLems;
 	private AspectNode _aspect;
-	private boolean _modifiedSimulationTree = false;
+	private AspectSubTreeNode _simulationTree;
 
-	public UpdateLEMSimulationTreeVisitor(ILEMSResultsContainer lemsResults,
-			AspectNode aspect, Map<String, String> geppettoToLems) {
-		_lemsResults = lemsResults;
+	public CreateLEMSWatchPlanVisitor(LEMSWatchPlan watchPlan, AspectNode aspect, Map<String, String> geppettoToLems)
+	{
+		_watchPlan = watchPlan;
 		_geppettoToLems = geppettoToLems;
 		_aspect = aspect;
 	}
@@ -71,16 +63,18 @@ public class UpdateLEMSimulationTreeVisitor extends RuntimeTreeVisitor {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see
-	 * org.geppetto.core.model.state.visitors.DefaultStateVisitor#inAspectNode
-	 * (org.geppetto.core.model.runtime.AspectNode)
+	 * @see org.geppetto.core.model.state.visitors.DefaultStateVisitor#inAspectNode (org.geppetto.core.model.runtime.AspectNode)
 	 */
 	@Override
-	public boolean inAspectNode(AspectNode node) {
+	public boolean inAspectNode(AspectNode node)
+	{
 		// we only visit the nodes which belong to the same aspect
-		if (node.getId().equals(_aspect.getId())) {
+		if(node.getId().equals(_aspect.getId()))
+		{
 			return super.inAspectNode(node);
-		} else {
+		}
+		else
+		{
 			return false;
 		}
 	}
@@ -88,19 +82,29 @@ public class UpdateLEMSimulationTreeVisitor extends RuntimeTreeVisitor {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.geppetto.core.model.state.visitors.DefaultStateVisitor#
-	 * outAspectSubTreeNode(org.geppetto.core.model.runtime.AspectSubTreeNode)
+	 * @see org.geppetto.core.model.state.visitors.DefaultStateVisitor#inAspectSubTreeNode(org.geppetto.core.model.runtime.AspectSubTreeNode)
 	 */
 	@Override
-	public boolean outAspectSubTreeNode(AspectSubTreeNode node) {
-		if (node.getType().equals(AspectTreeType.SIMULATION_TREE)
-				&& _modifiedSimulationTree) {
-			node.setModified(true);
-			_modifiedSimulationTree = false;
-			AspectNode aspectNode = (AspectNode) node.getParent();
-			aspectNode.setModified(true);
-			((EntityNode) aspectNode.getParentEntity())
-					.updateParentEntitiesFlags(true);
+	public boolean inAspectSubTreeNode(AspectSubTreeNode node)
+	{
+		if(node.getType().equals(AspectTreeType.SIMULATION_TREE))
+		{
+			_simulationTree = node;
+		}
+		return super.inAspectSubTreeNode(node);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.core.model.state.visitors.DefaultStateVisitor#outAspectSubTreeNode(org.geppetto.core.model.runtime.AspectSubTreeNode)
+	 */
+	@Override
+	public boolean outAspectSubTreeNode(AspectSubTreeNode node)
+	{
+		if(node == _simulationTree)
+		{
+			_simulationTree = null;
 		}
 		return super.outAspectSubTreeNode(node);
 	}
@@ -108,30 +112,21 @@ public class UpdateLEMSimulationTreeVisitor extends RuntimeTreeVisitor {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see
-	 * org.geppetto.core.model.state.visitors.DefaultStateVisitor#visitVariableNode
-	 * (org.geppetto.core.model.runtime.VariableNode)
+	 * @see org.geppetto.core.model.state.visitors.DefaultStateVisitor#visitVariableNode (org.geppetto.core.model.runtime.VariableNode)
 	 */
 	@Override
-	public boolean visitVariableNode(VariableNode node) {
-		if (node.isWatched()){
-			if(node.getId().equals("time")){
-				return super.visitVariableNode(node);
-			}
-			String lemsState = _geppettoToLems.get(node.getInstancePath()).replace(
-					".", "/");
-			StateIdentifier stateId = new StateIdentifier(lemsState);
-			if (!_lemsResults.getStates().containsKey(stateId)) {
-				_errorMessage = stateId + " not found in LEMS results:"
-						+ _lemsResults.getStates();
+	public boolean visitVariableNode(VariableNode node)
+	{
+		if(node.isWatched() && _simulationTree != null && !node.getId().equals("time"))
+		{
+			String lemsState = _geppettoToLems.get(node.getInstancePath());
+			if(lemsState == null)
+			{
+				_errorMessage = node.getInstancePath() + " is watched but it doesn't map to any LEMS state";
 			}
-			ALEMSValue lemsValue = _lemsResults.getState(stateId).getLastValue();
-			if (lemsValue instanceof LEMSDoubleValue) {
-				Quantity quantity = new Quantity();
-				quantity.setValue(new DoubleValue(((LEMSDoubleValue) lemsValue)
-						.getAsDouble()));
-				node.addQuantity(quantity);
-				_modifiedSimulationTree = true;
+			else
+			{
+				_watchPlan.add(node, new StateIdentifier(lemsState.replace(".", "/")), _simulationTree);
 			}
 		}
 		return super.visitVariableNode(node);
@@ -140,7 +135,8 @@ public class UpdateLEMSimulationTreeVisitor extends RuntimeTreeVisitor {
 	/**
 	 * @return
 	 */
-	public String getError() {
+	public String getError()
+	{
 		return _errorMessage;
 	}
 }
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.Arrays;
+
+/**
+ * A buffer of primitive doubles which retains at most a given number of samples, once full the oldest samples are overwritten. A buffer with no retention window grows to keep every sample.
+ */
+public class DoubleRingBuffer
+{
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private double[] _values;
+	private int _window;
+	private int _start = 0;
+	private int _size = 0;
+	private long _appended = 0;
+
+	/**
+	 * @param window
+	 *            the maximum number of samples retained, 0 to retain every sample
+	 */
+	public DoubleRingBuffer(int window)
+	{
+		if(window < 0)
+		{
+			throw new IllegalArgumentException("The retention window can't be negative, found " + window);
+		}
+		_window = window;
+		_values = new double[window > 0 ? Math.min(window, INITIAL_CAPACITY) : INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @param value
+	 */
+	public void append(double value)
+	{
+		if(_size == _values.length)
+		{
+			if(_window == 0 || _values.length < _window)
+			{
+				grow();
+			}
+			else
+			{
+				// full, overwrite the oldest sample
+				_values[_start] = value;
+				_start = (_start + 1) % _values.length;
+				_appended++;
+				return;
+			}
+		}
+		_values[(_start + _size) % _values.length] = value;
+		_size++;
+		_appended++;
+	}
+
+	/**
+	 * @param values
+	 * @param offset
+	 * @param length
+	 */
+	public void append(double[] values, int offset, int length)
+	{
+		for(int i = offset; i < offset + length; i++)
+		{
+			append(values[i]);
+		}
+	}
+
+	/**
+	 * Doubles the capacity, without exceeding the window, unrolling the ring so that the oldest sample is at the beginning
+	 */
+	private void grow()
+	{
+		int capacity = _values.length * 2;
+		if(_window > 0)
+		{
+			capacity = Math.min(capacity, _window);
+		}
+		double[] values = new double[capacity];
+		int head = Math.min(_size, _values.length - _start);
+		System.arraycopy(_values, _start, values, 0, head);
+		System.arraycopy(_values, 0, values, head, _size - head);
+		_values = values;
+		_start = 0;
+	}
+
+	/**
+	 * @param index
+	 *            0 is the oldest sample retained
+	 * @return
+	 */
+	public double get(int index)
+	{
+		if(index < 0 || index >= _size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " out of " + _size + " samples");
+		}
+		return _values[(_start + index) % _values.length];
+	}
+
+	/**
+	 * @return the most recent sample
+	 */
+	public double getLast()
+	{
+		return get(_size - 1);
+	}
+
+	/**
+	 * @return the number of samples retained
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return the number of samples appended since the buffer was created or cleared, including the ones which were overwritten
+	 */
+	public long getAppended()
+	{
+		return _appended;
+	}
+
+	/**
+	 * @return the number of samples which were overwritten and are not available anymore
+	 */
+	public long getDiscarded()
+	{
+		return _appended - _size;
+	}
+
+	/**
+	 * @return the retained samples, oldest first
+	 */
+	public double[] toArray()
+	{
+		double[] values = new double[_size];
+		int head = Math.min(_size, _values.length - _start);
+		System.arraycopy(_values, _start, values, 0, head);
+		System.arraycopy(_values, 0, values, head, _size - head);
+		return values;
+	}
+
+	/**
+	 * @return the retention window, 0 if every sample is retained
+	 */
+	public int getWindow()
+	{
+		return _window;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(_values, 0);
+		_start = 0;
+		_size = 0;
+		_appended = 0;
+	}
+}
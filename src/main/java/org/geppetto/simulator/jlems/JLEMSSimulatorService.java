@@ -32,17 +32,22 @@
  *******************************************************************************/
 package org.geppetto.simulator.jlems;
 
-import java.text.DecimalFormat;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.measure.quantity.Quantity;
-import javax.measure.unit.SI;
 import javax.measure.unit.Unit;
 
 import org.apache.commons.logging.Log;
@@ -54,18 +59,13 @@ import org.geppetto.core.data.model.IAspectConfiguration;
 import org.geppetto.core.features.IVariableWatchFeature;
 import org.geppetto.core.model.IModel;
 import org.geppetto.core.model.ModelWrapper;
-import org.geppetto.core.model.runtime.ANode;
 import org.geppetto.core.model.runtime.AspectNode;
-import org.geppetto.core.model.runtime.AspectSubTreeNode;
-import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
-import org.geppetto.core.model.runtime.EntityNode;
 import org.geppetto.core.services.GeppettoFeature;
 import org.geppetto.core.services.ModelFormat;
 import org.geppetto.core.services.registry.ServicesRegistry;
 import org.geppetto.core.simulation.ISimulatorCallbackListener;
 import org.geppetto.core.simulator.ASimulator;
 import org.geppetto.core.simulator.AVariableWatchFeature;
-import org.geppetto.core.utilities.VariablePathSerializer;
 import org.lemsml.jlems.api.LEMSBuildConfiguration;
 import org.lemsml.jlems.api.LEMSBuildException;
 import org.lemsml.jlems.api.LEMSBuildOptions;
@@ -97,17 +97,134 @@ import org.springframework.stereotype.Service;
 public class JLEMSSimulatorService extends ASimulator
 {
 
+	/**
+	 * Simulator parameter of the aspect configuration holding the number of jLEMS timesteps to advance for every call to simulate
+	 */
+	public static final String STEPS_PER_SIMULATE = "stepsPerSimulate";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the number of samples retained for every watched state, 0 to retain every sample
+	 */
+	public static final String RECORDING_WINDOW = "recordingWindow";
+
+	private static final int DEFAULT_RECORDING_WINDOW = 100000;
+
+	/**
+	 * Simulator parameter of the aspect configuration, "all" to add every sample of every call to simulate to the runtime tree, which is the default, or "last" to add only the last one. The time
+	 * node is advanced once for every sample added and the recording store keeps every sample either way. It is ignored when a sampling policy is set.
+	 */
+	public static final String TREE_FEED = "treeFeed";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the path of a file where the values of every recorded state are streamed
+	 */
+	public static final String RESULTS_FILE = "resultsFile";
+
+	private static final int RESULTS_FILE_CHUNK_ROWS = 4096;
+
+	/**
+	 * Simulator parameter of the aspect configuration, "true" to advance the independent state instances in parallel
+	 */
+	public static final String PARALLEL_STEPPING = "parallelStepping";
+
+	/**
+	 * Simulator parameter of the aspect configuration, "true" to integrate on a separate thread which runs ahead of the updates of the runtime tree
+	 */
+	public static final String PIPELINED = "pipelined";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the maximum number of batches the simulation thread can run ahead
+	 */
+	public static final String PIPELINE_CAPACITY = "pipelineCapacity";
+
+	private static final int DEFAULT_PIPELINE_CAPACITY = 4;
+
+	private static final int HEADLESS_BATCH_STEPS = 4096;
+
+	/**
+	 * Simulator parameter of the aspect configuration, "false" to record every state of the output specification of the document instead of only the watched ones
+	 */
+	public static final String RECORD_WATCHED_ONLY = "recordWatchedOnly";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the sampling policy of the watched variables, see {@link LEMSSampler}. The policy applies to every watched variable of the aspect
+	 * since they share the time node.
+	 */
+	public static final String SAMPLING = "sampling";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the number of seconds between two summaries of the step metrics in the log, 0 to not log them
+	 */
+	public static final String METRICS_LOG_INTERVAL = "metricsLogInterval";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the tolerance of the adaptive stepping, see {@link LEMSStepController}, 0 to advance the same number of timesteps for every call to
+	 * simulate. Only the number of timesteps of a call adapts, jLEMS integrates with the timestep of the run configuration.
+	 */
+	public static final String ADAPTIVE_TOLERANCE = "adaptiveTolerance";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the maximum number of jLEMS timesteps advanced for a call to simulate with adaptive stepping
+	 */
+	public static final String MAX_STEPS_PER_SIMULATE = "maxStepsPerSimulate";
+
+	private static final int DEFAULT_MAX_STEPS_PER_SIMULATE = 1024;
+
+	/**
+	 * Simulator parameter of the aspect configuration holding a regular expression, the states of the output specification whose paths match it are recorded as events when they cross the
+	 * threshold upwards, see {@link LEMSEventLog}
+	 */
+	public static final String EVENT_STATES = "eventStates";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the threshold of the states recorded as events, in SI units, 0 when not specified
+	 */
+	public static final String EVENT_THRESHOLD = "eventThreshold";
+
+	/**
+	 * Simulator parameter of the aspect configuration holding the number of models of every document built ahead of time in the background, so that a reset doesn't wait for the build, see
+	 * {@link LEMSStateInstancePool}. 0, the default, to build the models when the simulation is reset.
+	 */
+	public static final String PREBUILT_MODELS = "prebuiltModels";
+
 	private static Log _logger = LogFactory.getLog(JLEMSSimulatorService.class);
-	private ILEMSSimulator _simulator = null;
+	private List<ILEMSSimulator> _simulators = new ArrayList<ILEMSSimulator>();
+	private boolean _parallelStepping = false;
+	private LEMSParallelStepper _parallelStepper = null;
+	private boolean _pipelined = false;
+	private LEMSSimulationPipeline _pipeline = null;
+	private int _stepsPerSimulate = 1;
+	private double _adaptiveTolerance = 0;
+	private volatile LEMSStepController _stepController = null;
+	private int _recordingWindow = DEFAULT_RECORDING_WINDOW;
+	private File _resultsFile = null;
+	private LEMSTimeSeriesFile _timeSeriesFile = null;
+	private List<IStateIdentifier> _resultsColumns;
+	private double[] _resultsRow;
+	private double _time = 0;
+	// the simulation time of the last sample added to the runtime tree
+	private double _treeTime = 0;
 	private ILEMSRunConfiguration _runConfig;
-	private DecimalFormat _df = new DecimalFormat("0.E0");
+	private List<ILEMSRunConfiguration> _runConfigs = new ArrayList<ILEMSRunConfiguration>();
+	private LEMSRecordingFilter _recordingFilter = null;
+	private boolean _recordWatchedOnly = true;
+	private int _prebuiltModels = 0;
+	// the number of models built ahead read from the aspect configuration, -1 until the first call to simulate
+	private int _modelsAhead = -1;
 
 	@Autowired
 	private SimulatorConfig jlemsSimulatorConfig;
 
-	private Map<String, String> _lemsToGeppetto = new HashMap<String, String>();
-	private Map<String, String> _geppettoToLems = new HashMap<String, String>();
-	private ILEMSDocument _lemsDocument = null;
+	private LEMSPathResolver _pathResolver = new LEMSPathResolver();
+	private LEMSSimulationTreeBuilder _treeBuilder = new LEMSSimulationTreeBuilder();
+	private LEMSChangeTracker _changeTracker = new LEMSChangeTracker();
+	private List<ILEMSDocument> _lemsDocuments = new ArrayList<ILEMSDocument>();
+	private LEMSResultsBuffer _resultsBuffer = null;
+	private LEMSWatchPlan _watchPlan = null;
+	private LEMSRecordingStore _recordingStore = null;
+	private LEMSEventDetector _eventDetector = null;
+	private LEMSStepMetrics _metrics = new LEMSStepMetrics(LEMSStepMetrics.getGlobal());
+	private long _lastMetricsLog = System.nanoTime();
 
 	/*
 	 * (non-Javadoc)
@@ -119,55 +236,221 @@ public class JLEMSSimulatorService extends ASimulator
 	{
 		super.initialize(models, listener);
 		setTimeStepUnit("s");
-		try
+		stopPipeline();
+
+		// the models built ahead of time for the previous documents won't be used by this session
+		for(ILEMSDocument lemsDocument : _lemsDocuments)
+		{
+			LEMSStateInstancePool.getInstance().release(lemsDocument);
+		}
+		_lemsDocuments.clear();
+		_pathResolver.clear();
+		_treeBuilder.clear();
+		_changeTracker.clear();
+		for(IModel model : models)
 		{
-			ILEMSBuilder builder = new LEMSBuilder();
-			// TODO Refactor simulators to deal with more than one model!
-			_lemsDocument = (ILEMSDocument) ((ModelWrapper) models.get(0)).getModel(ServicesRegistry.getModelFormat("LEMS"));
-			builder.addDocument(_lemsDocument);
+			ILEMSDocument lemsDocument = (ILEMSDocument) ((ModelWrapper) model).getModel(ServicesRegistry.getModelFormat("LEMS"));
+			if(lemsDocument != null)
+			{
+				_lemsDocuments.add(lemsDocument);
+			}
+		}
+		if(_lemsDocuments.isEmpty())
+		{
+			throw new GeppettoInitializationException("No LEMS model found to initialize the jLEMS simulator");
+		}
+		_pathResolver.setShared(true);
 
-			ILEMSBuildOptions options = new LEMSBuildOptions();
-			options.addBuildOption(LEMSBuildOptionsEnum.FLATTEN);
+		_time = 0;
+		_treeTime = 0;
+		_stepController = null;
+		_eventDetector = null;
+		_modelsAhead = -1;
+		buildSimulators(0);
 
-			ILEMSBuildConfiguration config = new LEMSBuildConfiguration();
-			builder.build(config, options); // pre-build to read the run
-											// configuration and target from the
-											// file
+		if(this.getFeature(GeppettoFeature.VARIABLE_WATCH_FEATURE) == null)
+		{
+			// add variable watch feature
+			this.addFeature(new AVariableWatchFeature());
+		}
+		_logger.info("jLEMS Simulator initialized");
+	}
 
-			_runConfig = LEMSDocumentReader.getLEMSRunConfiguration(_lemsDocument);
-			config = new LEMSBuildConfiguration(LEMSDocumentReader.getTarget(_lemsDocument));
-			Collection<ILEMSStateInstance> stateInstances = builder.build(config, options); // real build for our specific target
+	/**
+	 * Brings the simulation back to its start without building the models, the state instances are taken from the pool of models built ahead of time. The mappings to the runtime tree, the
+	 * recordings are cleared and the results file is closed, the runtime tree itself is left to the caller.
+	 * 
+	 * @throws GeppettoExecutionException
+	 */
+	public void reset() throws GeppettoExecutionException
+	{
+		stopPipeline();
+		closeResultsFile();
+		try
+		{
+			buildSimulators(_modelsAhead < 0 ? _prebuiltModels : _modelsAhead);
+		}
+		catch(GeppettoInitializationException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+		_time = 0;
+		_treeTime = 0;
+		_stepController = null;
+		_pathResolver.clear();
+		_treeBuilder.clear();
+		_changeTracker.clear();
+		_watchPlan = null;
+		_resultsBuffer = null;
+		if(_recordingStore != null)
+		{
+			_recordingStore.clear();
+		}
+		if(_eventDetector != null)
+		{
+			_eventDetector.getLog().clear();
+			_eventDetector.reset();
+		}
+		_logger.info("jLEMS Simulator reset");
+	}
 
-			_simulator = new LEMSSimulator();
-			for(ILEMSStateInstance instance : stateInstances)
+	/**
+	 * Builds every LEMS document and creates a simulator for each of their state instances
+	 * 
+	 * @param ahead
+	 *            the number of models of every document the pool builds again ahead of time
+	 * @throws GeppettoInitializationException
+	 */
+	private void buildSimulators(final int ahead) throws GeppettoInitializationException
+	{
+		// every model is built and every state instance is initialized in parallel, each
+		// state instance gets its own simulator
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(_lemsDocuments.size(), Runtime.getRuntime().availableProcessors()));
+		try
+		{
+			long buildStart = System.currentTimeMillis();
+			List<Future<BuiltModel>> builds = new ArrayList<Future<BuiltModel>>();
+			for(final ILEMSDocument lemsDocument : _lemsDocuments)
 			{
-				_simulator.initialize(instance, _runConfig);
+				builds.add(executor.submit(new Callable<BuiltModel>()
+				{
+					@Override
+					public BuiltModel call() throws Exception
+					{
+						return LEMSStateInstancePool.getInstance().take(lemsDocument, ahead);
+					}
+				}));
 			}
 
+			List<Future<ILEMSSimulator>> initializations = new ArrayList<Future<ILEMSSimulator>>();
+			_runConfig = null;
+			_runConfigs.clear();
+			for(Future<BuiltModel> build : builds)
+			{
+				BuiltModel builtModel = build.get();
+				if(_runConfig == null)
+				{
+					_runConfig = builtModel._runConfig;
+				}
+				else if(_runConfig.getTimestep() != builtModel._runConfig.getTimestep())
+				{
+					throw new GeppettoInitializationException("All the LEMS models simulated together need the same timestep, found " + _runConfig.getTimestep() + " and "
+							+ builtModel._runConfig.getTimestep());
+				}
+				final ILEMSRunConfiguration runConfig = builtModel._runConfig;
+				_runConfigs.add(runConfig);
+				for(final ILEMSStateInstance instance : builtModel._stateInstances)
+				{
+					initializations.add(executor.submit(new Callable<ILEMSSimulator>()
+					{
+						@Override
+						public ILEMSSimulator call() throws Exception
+						{
+							ILEMSSimulator simulator = new LEMSSimulator();
+							simulator.initialize(instance, runConfig);
+							return simulator;
+						}
+					}));
+				}
+			}
 
-			if(this.getFeature(GeppettoFeature.VARIABLE_WATCH_FEATURE) == null)
+			_simulators.clear();
+			_parallelStepper = null;
+			for(Future<ILEMSSimulator> initialization : initializations)
 			{
-				// add variable watch feature
-				this.addFeature(new AVariableWatchFeature());
+				_simulators.add(initialization.get());
 			}
+			// everything in the output specification is recorded until we know what is watched
+			_recordingFilter = new LEMSRecordingFilter(_runConfigs);
+			_logger.info(_lemsDocuments.size() + " LEMS models built and " + _simulators.size() + " state instances initialized in " + (System.currentTimeMillis() - buildStart) + "ms");
 		}
-		catch(LEMSBuildException e)
+		catch(ExecutionException e)
 		{
-			throw new GeppettoInitializationException(e);
+			Throwable cause = e.getCause();
+			throw new GeppettoInitializationException(cause instanceof Exception ? (Exception) cause : e);
 		}
-		catch(LEMSExecutionException e)
+		catch(InterruptedException e)
 		{
+			Thread.currentThread().interrupt();
 			throw new GeppettoInitializationException(e);
 		}
-		catch(ContentError e)
+		finally
 		{
-			throw new GeppettoInitializationException(e);
+			executor.shutdown();
 		}
-		catch(ParseError e)
+	}
+
+	/**
+	 * @param lemsDocument
+	 * @return the state instances of the target of the document and its run configuration
+	 * @throws LEMSBuildException
+	 * @throws ContentError
+	 * @throws ParseError
+	 */
+	static BuiltModel build(ILEMSDocument lemsDocument) throws LEMSBuildException, ContentError, ParseError
+	{
+		ILEMSBuilder builder = new LEMSBuilder();
+		builder.addDocument(lemsDocument);
+
+		ILEMSBuildOptions options = new LEMSBuildOptions();
+		options.addBuildOption(LEMSBuildOptionsEnum.FLATTEN);
+
+		// the run configuration and the target can only be read once the document
+		// has been built, building the default target of the document gives us the
+		// state instances of the target we would build next so we keep them
+		Collection<ILEMSStateInstance> stateInstances = builder.build(new LEMSBuildConfiguration(), options);
+		ILEMSRunConfiguration runConfig = LEMSDocumentReader.getLEMSRunConfiguration(lemsDocument);
+		if(stateInstances == null || stateInstances.isEmpty())
 		{
-			throw new GeppettoInitializationException(e);
+			ILEMSBuildConfiguration config = new LEMSBuildConfiguration(LEMSDocumentReader.getTarget(lemsDocument));
+			stateInstances = builder.build(config, options); // real build for our specific target
+		}
+		return new BuiltModel(stateInstances, runConfig);
+	}
+
+	/**
+	 * The state instances built from a LEMS document together with the run configuration they are simulated with
+	 */
+	public static class BuiltModel
+	{
+		private Collection<ILEMSStateInstance> _stateInstances;
+		private ILEMSRunConfiguration _runConfig;
+
+		public BuiltModel(Collection<ILEMSStateInstance> stateInstances, ILEMSRunConfiguration runConfig)
+		{
+			_stateInstances = stateInstances;
+			_runConfig = runConfig;
+		}
+
+		public Collection<ILEMSStateInstance> getStateInstances()
+		{
+			return _stateInstances;
+		}
+
+		public ILEMSRunConfiguration getRunConfig()
+		{
+			return _runConfig;
 		}
-		_logger.info("jLEMS Simulator initialized");
 	}
 
 	/**
@@ -186,6 +469,225 @@ public class JLEMSSimulatorService extends ASimulator
 		this._runConfig = runConfig;
 	}
 
+	/**
+	 * @return the number of jLEMS timesteps advanced for every call to simulate when the aspect configuration doesn't specify it
+	 */
+	public int getStepsPerSimulate()
+	{
+		return _stepsPerSimulate;
+	}
+
+	/**
+	 * @param stepsPerSimulate
+	 */
+	public void setStepsPerSimulate(int stepsPerSimulate)
+	{
+		if(stepsPerSimulate < 1)
+		{
+			throw new IllegalArgumentException("The number of steps per simulate has to be at least 1, found " + stepsPerSimulate);
+		}
+		this._stepsPerSimulate = stepsPerSimulate;
+	}
+
+	/**
+	 * @return the tolerance of the adaptive stepping when the aspect configuration doesn't specify it, 0 if the adaptive stepping is off
+	 */
+	public double getAdaptiveTolerance()
+	{
+		return _adaptiveTolerance;
+	}
+
+	/**
+	 * @param adaptiveTolerance
+	 */
+	public void setAdaptiveTolerance(double adaptiveTolerance)
+	{
+		if(adaptiveTolerance < 0)
+		{
+			throw new IllegalArgumentException("The tolerance of the adaptive stepping can't be negative, found " + adaptiveTolerance);
+		}
+		this._adaptiveTolerance = adaptiveTolerance;
+	}
+
+	/**
+	 * @return the number of samples retained for every watched state when the aspect configuration doesn't specify it, 0 if every sample is retained
+	 */
+	public int getRecordingWindow()
+	{
+		return _recordingWindow;
+	}
+
+	/**
+	 * @param recordingWindow
+	 */
+	public void setRecordingWindow(int recordingWindow)
+	{
+		if(recordingWindow < 0)
+		{
+			throw new IllegalArgumentException("The recording window can't be negative, found " + recordingWindow);
+		}
+		this._recordingWindow = recordingWindow;
+	}
+
+	/**
+	 * @return the number of models of every document built ahead of time when the aspect configuration doesn't specify it
+	 */
+	public int getPrebuiltModels()
+	{
+		return _prebuiltModels;
+	}
+
+	/**
+	 * @param prebuiltModels
+	 */
+	public void setPrebuiltModels(int prebuiltModels)
+	{
+		if(prebuiltModels < 0)
+		{
+			throw new IllegalArgumentException("The number of models built ahead of time can't be negative, found " + prebuiltModels);
+		}
+		this._prebuiltModels = prebuiltModels;
+	}
+
+	/**
+	 * @return true if the independent state instances are advanced in parallel when the aspect configuration doesn't specify it
+	 */
+	public boolean isParallelStepping()
+	{
+		return _parallelStepping;
+	}
+
+	/**
+	 * @param parallelStepping
+	 */
+	public void setParallelStepping(boolean parallelStepping)
+	{
+		this._parallelStepping = parallelStepping;
+	}
+
+	/**
+	 * @return true if the integration runs on a separate thread when the aspect configuration doesn't specify it
+	 */
+	public boolean isPipelined()
+	{
+		return _pipelined;
+	}
+
+	/**
+	 * @param pipelined
+	 */
+	public void setPipelined(boolean pipelined)
+	{
+		this._pipelined = pipelined;
+	}
+
+	/**
+	 * Stops the simulation thread of the pipelined mode, the results it produced and which were not consumed are discarded
+	 */
+	public void stopPipeline()
+	{
+		if(_pipeline != null)
+		{
+			_pipeline.stop();
+			_pipeline = null;
+		}
+	}
+
+	/**
+	 * @return true if only the watched states are recorded when the aspect configuration doesn't specify it
+	 */
+	public boolean isRecordWatchedOnly()
+	{
+		return _recordWatchedOnly;
+	}
+
+	/**
+	 * @param recordWatchedOnly
+	 */
+	public void setRecordWatchedOnly(boolean recordWatchedOnly)
+	{
+		this._recordWatchedOnly = recordWatchedOnly;
+	}
+
+	/**
+	 * @return the instance paths of the variables created or updated by the last call to simulate
+	 */
+	public Set<String> getChangedInstancePaths()
+	{
+		return _changeTracker.getChangedInstancePaths();
+	}
+
+	/**
+	 * @return the timers and counters of the steps of this simulator
+	 */
+	public LEMSStepMetrics getMetrics()
+	{
+		return _metrics;
+	}
+
+	/**
+	 * @return the events of the states recorded as events, null if no state is
+	 */
+	public LEMSEventLog getEventLog()
+	{
+		return _eventDetector != null ? _eventDetector.getLog() : null;
+	}
+
+	/**
+	 * @return the primitive recordings of the watched states, null before the first step
+	 */
+	public LEMSRecordingStore getRecordingStore()
+	{
+		return _recordingStore;
+	}
+
+	/**
+	 * @return the file where the results are streamed when the aspect configuration doesn't specify it, null if results are not streamed
+	 */
+	public File getResultsFile()
+	{
+		return _resultsFile;
+	}
+
+	/**
+	 * @param resultsFile
+	 *            the file where the values of every recorded state are streamed, null to not stream them
+	 */
+	public void setResultsFile(File resultsFile)
+	{
+		this._resultsFile = resultsFile;
+	}
+
+	/**
+	 * @return the time series streamed so far, null if results are not streamed. The first column of every segment is the time.
+	 */
+	public LEMSTimeSeriesFile getTimeSeriesFile()
+	{
+		return _timeSeriesFile;
+	}
+
+	/**
+	 * Flushes and closes the file where the results are streamed
+	 * 
+	 * @throws GeppettoExecutionException
+	 */
+	public void closeResultsFile() throws GeppettoExecutionException
+	{
+		if(_timeSeriesFile != null)
+		{
+			try
+			{
+				_timeSeriesFile.close();
+			}
+			catch(IOException e)
+			{
+				throw new GeppettoExecutionException(e);
+			}
+			_timeSeriesFile = null;
+			_resultsColumns = null;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -194,256 +696,459 @@ public class JLEMSSimulatorService extends ASimulator
 	@Override
 	public void simulate(IAspectConfiguration aspectConfiguration, AspectNode aspect) throws GeppettoExecutionException
 	{
-		ILEMSResultsContainer results = new LEMSResultsContainer();
-		try
+		prepareModels(aspectConfiguration);
+		final int steps = SimulatorParameters.getInt(aspectConfiguration, STEPS_PER_SIMULATE, _stepsPerSimulate, 1);
+		final boolean parallel = SimulatorParameters.getBoolean(aspectConfiguration, PARALLEL_STEPPING, _parallelStepping);
+		if(_recordingStore == null)
 		{
-			_simulator.advance(results);
+			_recordingStore = new LEMSRecordingStore(SimulatorParameters.getInt(aspectConfiguration, RECORDING_WINDOW, _recordingWindow, 0));
 		}
-		catch(LEMSExecutionException e)
+		if(_eventDetector == null)
 		{
-			throw new GeppettoExecutionException(e);
+			_eventDetector = createEventDetector(aspectConfiguration);
+		}
+		if(_stepController == null)
+		{
+			double tolerance = SimulatorParameters.getDouble(aspectConfiguration, ADAPTIVE_TOLERANCE, _adaptiveTolerance, 0);
+			if(tolerance > 0)
+			{
+				_stepController = new LEMSStepController(tolerance, steps, SimulatorParameters.getInt(aspectConfiguration, MAX_STEPS_PER_SIMULATE, DEFAULT_MAX_STEPS_PER_SIMULATE, 1));
+			}
 		}
 
-		updateSimulationTree(results, aspect);
-		notifySimulatorHasStepped(aspect);
+		if(SimulatorParameters.getBoolean(aspectConfiguration, PIPELINED, _pipelined))
+		{
+			if(_pipeline == null)
+			{
+				_pipeline = new LEMSSimulationPipeline(new LEMSSimulationPipeline.IBatchProducer()
+				{
+					@Override
+					public boolean produce(LEMSResultsBuffer batch) throws Exception
+					{
+						advanceBatch(batch, steps, parallel);
+						return true;
+					}
+				}, SimulatorParameters.getInt(aspectConfiguration, PIPELINE_CAPACITY, DEFAULT_PIPELINE_CAPACITY, 1), steps);
+				_pipeline.start();
+			}
+			LEMSResultsBuffer batch = _pipeline.take();
+			if(batch == null)
+			{
+				throw new GeppettoExecutionException("The jLEMS simulation thread has stopped");
+			}
+			try
+			{
+				applyResults(batch, aspect, aspectConfiguration);
+			}
+			finally
+			{
+				_pipeline.release(batch);
+			}
+		}
+		else
+		{
+			IVariableWatchFeature watchFeature = (IVariableWatchFeature) this.getFeature(GeppettoFeature.VARIABLE_WATCH_FEATURE);
+			if(watchFeature != null && watchFeature.watchListModified())
+			{
+				// record every state in this batch so that the newly watched ones are found in it
+				_recordingFilter.recordAll();
+			}
+			if(_resultsBuffer == null)
+			{
+				_resultsBuffer = new LEMSResultsBuffer(steps);
+			}
+			advanceBatch(_resultsBuffer, steps, parallel);
+			applyResults(_resultsBuffer, aspect, aspectConfiguration);
+		}
 	}
 
 	/**
-	 * @param results
-	 * @return
+	 * Starts building in the background the models a reset will take, once per session
+	 * 
+	 * @param aspectConfiguration
 	 * @throws GeppettoExecutionException
 	 */
-	private void updateSimulationTree(ILEMSResultsContainer results, AspectNode aspect) throws GeppettoExecutionException
+	private void prepareModels(IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
 	{
-		IVariableWatchFeature watchFeature = ((IVariableWatchFeature) this.getFeature(GeppettoFeature.VARIABLE_WATCH_FEATURE));
-		advanceTimeStep(_runConfig.getTimestep(), aspect);
-
-		if(watchFeature.watchListModified())
+		if(_modelsAhead < 0)
 		{
-			for(IStateIdentifier state : results.getStates().keySet())
+			_modelsAhead = SimulatorParameters.getInt(aspectConfiguration, PREBUILT_MODELS, _prebuiltModels, 0);
+			for(ILEMSDocument lemsDocument : _lemsDocuments)
 			{
-				String statePath = state.getStatePath().replace("/", ".");
-
-				AspectSubTreeNode simulationTree = getSimulationTreeFor(statePath, aspect.getSubTree(AspectTreeType.SIMULATION_TREE));
-				simulationTree.setModified(true);
-				AspectNode aspectNode = (AspectNode) simulationTree.getParent();
-				aspectNode.setModified(true);
-				((EntityNode) aspectNode.getParentEntity()).updateParentEntitiesFlags(true);
-
-				// For every state found in the results add a node in the tree
-				CreateLEMSSimulationTreeVisitor createLEMSSimulationTreeVisitor = new CreateLEMSSimulationTreeVisitor(results, simulationTree, state, _lemsToGeppetto.get(statePath));
-				simulationTree.apply(createLEMSSimulationTreeVisitor);
-				watchFeature.setWatchListModified(false);
+				LEMSStateInstancePool.getInstance().prepare(lemsDocument, _modelsAhead);
 			}
 		}
-		else
+	}
+
+	/**
+	 * Runs jLEMS from the current time to the end of the run configuration without touching the runtime tree. Every state of the output specification is recorded in the recording store and
+	 * streamed to the results file in large batches, the file is closed at the end.
+	 * 
+	 * @param aspectConfiguration
+	 * @return the number of steps advanced and the throughput of the run
+	 * @throws GeppettoExecutionException
+	 */
+	public LEMSRunReport runToCompletion(IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
+	{
+		if(_pipeline != null)
+		{
+			throw new GeppettoExecutionException("Can't run to completion while the pipelined simulation thread is running");
+		}
+		prepareModels(aspectConfiguration);
+		boolean parallel = SimulatorParameters.getBoolean(aspectConfiguration, PARALLEL_STEPPING, _parallelStepping);
+		if(_recordingStore == null)
+		{
+			_recordingStore = new LEMSRecordingStore(SimulatorParameters.getInt(aspectConfiguration, RECORDING_WINDOW, _recordingWindow, 0));
+		}
+		if(_eventDetector == null)
+		{
+			_eventDetector = createEventDetector(aspectConfiguration);
+		}
+		double timestep = _runConfig.getTimestep();
+		long remaining = Math.round((_runConfig.getRuntime() - _time) / timestep);
+		long steps = 0;
+		LEMSResultsBuffer results = new LEMSResultsBuffer((int) Math.min(remaining, HEADLESS_BATCH_STEPS));
+		// the watch plan won't narrow the recorded states again until the tree is updated
+		_recordingFilter.recordAll();
+		_watchPlan = null;
+		long start = System.nanoTime();
+		while(steps < remaining)
 		{
-			UpdateLEMSimulationTreeVisitor updateStateTreeVisitor = new UpdateLEMSimulationTreeVisitor(results, aspect, _geppettoToLems);
-			aspect.getParent().apply(updateStateTreeVisitor);
-			if(updateStateTreeVisitor.getError() != null)
+			int batch = (int) Math.min(remaining - steps, HEADLESS_BATCH_STEPS);
+			advance(results, batch, parallel);
+			if(_eventDetector != null)
 			{
-				throw new GeppettoExecutionException(updateStateTreeVisitor.getError());
+				_eventDetector.detect(results, timestep);
 			}
+			streamResults(results, aspectConfiguration);
+			List<IStateIdentifier> states = results.getStates();
+			for(int i = 0; i < states.size(); i++)
+			{
+				_recordingStore.getOrCreateRecording(states.get(i)).append(results.getValues(i), 0, batch);
+			}
+			steps += batch;
 		}
+		closeResultsFile();
+		LEMSRunReport report = new LEMSRunReport(steps, steps * timestep, System.nanoTime() - start);
+		_logger.info("jLEMS run to completion: " + report);
+		return report;
 	}
 
 	/**
-	 * @param statePath
-	 * @param simulationTree
-	 * @return
+	 * @param aspectConfiguration
+	 * @return a detector of the crossings of the states selected by the aspect configuration, null if no state is recorded as events
+	 * @throws GeppettoExecutionException
 	 */
-	private AspectSubTreeNode getSimulationTreeFor(String statePath, AspectSubTreeNode simulationTree)
+	private LEMSEventDetector createEventDetector(IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
 	{
-		StringTokenizer st = new StringTokenizer(statePath, ".");
-		AspectNode parentAspect = (AspectNode) simulationTree.getParent();
-		EntityNode parentEntity = (EntityNode) parentAspect.getParent();
-
-		String pre = "";
-		String nt1 = "", nt2 = "";
-		while(st.hasMoreTokens())
+		String expression = SimulatorParameters.get(aspectConfiguration, EVENT_STATES);
+		if(expression == null)
 		{
-			if(nt1 == "") nt1 = st.nextToken();
-			if(st.hasMoreTokens())
+			return null;
+		}
+		Pattern pattern;
+		try
+		{
+			pattern = Pattern.compile(expression);
+		}
+		catch(PatternSyntaxException e)
+		{
+			throw new GeppettoExecutionException("Invalid value for " + EVENT_STATES + ": " + expression);
+		}
+		List<IStateIdentifier> sources = new ArrayList<IStateIdentifier>();
+		for(IStateIdentifier state : _recordingFilter.getDocumentStates())
+		{
+			if(pattern.matcher(state.getStatePath()).matches())
 			{
-				if(nt2 == "") nt2 = st.nextToken();
+				sources.add(state);
 			}
-			for(ANode e : parentEntity.getChildren())
+		}
+		double threshold = SimulatorParameters.getDouble(aspectConfiguration, EVENT_THRESHOLD, 0, -Double.MAX_VALUE);
+		_logger.info("Recording the crossings of " + threshold + " by " + sources.size() + " jLEMS states as events");
+		return new LEMSEventDetector(sources, threshold);
+	}
+
+	/**
+	 * Advances by the number of timesteps chosen by the adaptive stepping, or by the given number when it is off
+	 * 
+	 * @param results
+	 * @param steps
+	 * @param parallel
+	 * @throws GeppettoExecutionException
+	 */
+	private void advanceBatch(LEMSResultsBuffer results, int steps, boolean parallel) throws GeppettoExecutionException
+	{
+		LEMSStepController stepController = _stepController;
+		if(stepController == null)
+		{
+			advance(results, steps, parallel);
+		}
+		else
+		{
+			advance(results, stepController.getSteps(), parallel);
+			stepController.update(results);
+		}
+	}
+
+	/**
+	 * Advances the simulators and records their results
+	 * 
+	 * @param results
+	 *            the buffer where the results are recorded, its previous content is cleared
+	 * @param steps
+	 *            the number of timesteps to advance
+	 * @param parallel
+	 *            true to advance the independent state instances in parallel
+	 * @throws GeppettoExecutionException
+	 */
+	private void advance(LEMSResultsBuffer results, int steps, boolean parallel) throws GeppettoExecutionException
+	{
+		results.clear();
+		results.setStartTime(_time);
+		results.setTimestep(_runConfig.getTimestep());
+		_recordingFilter.apply();
+		results.setComplete(_recordingFilter.isRecordingAll());
+		long start = System.nanoTime();
+		try
+		{
+			if(_simulators.size() > 1 && parallel)
 			{
-				if(e.getId().equals(nt1))
+				if(_parallelStepper == null)
 				{
-					if(pre != "")
-					{
-						pre += ".";
-					}
-					pre += nt1;
-					parentEntity = (EntityNode) e;
-					nt1 = nt2;
-					nt2 = "";
-					break;
+					_parallelStepper = new LEMSParallelStepper(_simulators, LEMSParallelStepper.getSharedPool());
 				}
-				else if(e.getId().equals(VariablePathSerializer.getArrayName(nt1, nt2)) && isNumeric(nt2))
+				_parallelStepper.newBatch();
+				for(int i = 0; i < steps; i++)
 				{
-					if(pre != "")
-					{
-						pre += ".";
-					}
-					pre += nt1 + "." + nt2;
-					parentEntity = (EntityNode) e;
-					nt1 = nt2 = "";
-					break;
+					results.record(_parallelStepper.advance());
+					_time += _runConfig.getTimestep();
 				}
 			}
-			for(AspectNode a : parentEntity.getAspects())
+			else
 			{
-				if(a.getId().equals(parentAspect.getId()))
+				ILEMSResultsContainer lemsResults = new LEMSResultsContainer();
+				for(int i = 0; i < steps; i++)
 				{
-					String post = statePath.substring(statePath.indexOf(pre) + pre.length());
-					if(post.charAt(0) == '.')
+					for(ILEMSSimulator simulator : _simulators)
 					{
-						post = post.substring(1);
+						simulator.advance(lemsResults);
 					}
-					// We replace the pattern .digits. with [digits] as Geppetto doesn't support nodes that have numbers as names
-					post = post.replaceAll("\\.(\\d*)\\.", "\\[$1\\]\\.");
-					_lemsToGeppetto.put(statePath, a.getSubTree(AspectTreeType.SIMULATION_TREE).getInstancePath() + "." + post);
-					_geppettoToLems.put(a.getSubTree(AspectTreeType.SIMULATION_TREE).getInstancePath() + "." + post, statePath);
-					return a.getSubTree(AspectTreeType.SIMULATION_TREE);
+					results.record(lemsResults);
+					_time += _runConfig.getTimestep();
 				}
 			}
-			return null;
 		}
-
-		return null;
+		catch(LEMSExecutionException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+		_metrics.record(LEMSStepMetrics.Phase.ADVANCE, System.nanoTime() - start);
+		_metrics.stepped(steps, (long) steps * results.getStates().size());
 	}
 
 	/**
-	 * @param str
-	 * @return
+	 * Streams the results, adds them to the runtime tree and notifies the listeners
+	 * 
+	 * @param results
+	 * @param aspect
+	 * @param aspectConfiguration
+	 * @throws GeppettoExecutionException
 	 */
-	public static boolean isNumeric(String str)
+	private void applyResults(LEMSResultsBuffer results, AspectNode aspect, IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
 	{
-		try
+		long start = System.nanoTime();
+		if(_eventDetector != null)
 		{
-			double d = Integer.parseInt(str);
+			_eventDetector.detect(results, _runConfig.getTimestep());
 		}
-		catch(NumberFormatException nfe)
+		streamResults(results, aspectConfiguration);
+		long streamed = System.nanoTime();
+		_metrics.record(LEMSStepMetrics.Phase.STREAM, streamed - start);
+		updateSimulationTree(results, aspect, aspectConfiguration);
+		long notifyStart = System.nanoTime();
+		notifySimulatorHasStepped(aspect);
+		long notified = System.nanoTime();
+		_metrics.record(LEMSStepMetrics.Phase.NOTIFY, notified - notifyStart);
+		int logInterval = SimulatorParameters.getInt(aspectConfiguration, METRICS_LOG_INTERVAL, 0, 0);
+		if(logInterval > 0 && notified - _lastMetricsLog >= logInterval * 1000000000L)
 		{
-			return false;
+			_lastMetricsLog = notified;
+			_logger.info("jLEMS step metrics:\n" + _metrics.getSummary());
 		}
-		return true;
 	}
 
 	/**
-	 * @param dimension
-	 * @return
+	 * Appends the values of every recorded state to the results file, the file is created at the first step with a column for every state recorded. A new segment of the file is started when
+	 * the recorded states change, the states no longer recorded have no column instead of NaN values.
+	 * 
+	 * @param results
+	 * @param aspectConfiguration
+	 * @throws GeppettoExecutionException
 	 */
-	public Unit<? extends Quantity> getUnitFromLEMSDimension(String dimension)
+	private void streamResults(LEMSResultsBuffer results, IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
 	{
-		// the dimension string is a comma-separated list of dimension powers in
-		// the order
-		// mass, length, time, current, temperature, amount, brightness
-		StringTokenizer st = new StringTokenizer(dimension, ",");
-
-		Unit<? extends Quantity> resultingUnit = Unit.ONE;
-		float mass = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(mass != 0)
+		try
 		{
-			resultingUnit = resultingUnit.times(getUnit(mass, SI.GRAM));
+			File resultsFile = null;
+			if(_timeSeriesFile == null)
+			{
+				String path = SimulatorParameters.get(aspectConfiguration, RESULTS_FILE);
+				resultsFile = path != null ? new File(path) : _resultsFile;
+			}
+			if((_timeSeriesFile == null && resultsFile == null) || results.getSteps() == 0)
+			{
+				return;
+			}
+			List<IStateIdentifier> recorded = new ArrayList<IStateIdentifier>();
+			List<double[]> values = new ArrayList<double[]>();
+			for(int column = 0; column < results.getStates().size(); column++)
+			{
+				if(results.isRecorded(column))
+				{
+					recorded.add(results.getStates().get(column));
+					values.add(results.getValues(column));
+				}
+			}
+			if(_timeSeriesFile == null)
+			{
+				_timeSeriesFile = LEMSTimeSeriesFile.create(resultsFile, getColumnNames(recorded), RESULTS_FILE_CHUNK_ROWS);
+				_resultsColumns = recorded;
+				_resultsRow = new double[recorded.size() + 1];
+				_logger.info("Streaming jLEMS results to " + resultsFile);
+			}
+			else if(!_resultsColumns.equals(recorded))
+			{
+				_timeSeriesFile.startSegment(getColumnNames(recorded));
+				_resultsColumns = recorded;
+				_resultsRow = new double[recorded.size() + 1];
+			}
+			for(int step = 0; step < results.getSteps(); step++)
+			{
+				_resultsRow[0] = results.getTime(step);
+				for(int column = 0; column < values.size(); column++)
+				{
+					_resultsRow[column + 1] = values.get(column)[step];
+				}
+				_timeSeriesFile.append(_resultsRow);
+			}
 		}
-		float length = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(length != 0)
+		catch(IOException e)
 		{
-			resultingUnit = resultingUnit.times(getUnit(length, SI.METER));
+			throw new GeppettoExecutionException(e);
 		}
-		float time = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(time != 0)
+	}
+
+	/**
+	 * @param states
+	 * @return the names of the columns of the results file, the time followed by the paths of the states
+	 */
+	private static List<String> getColumnNames(List<IStateIdentifier> states)
+	{
+		List<String> columns = new ArrayList<String>();
+		columns.add("time");
+		for(IStateIdentifier state : states)
 		{
-			resultingUnit = resultingUnit.times(getUnit(time, SI.SECOND));
+			columns.add(state.getStatePath());
 		}
-		float current = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(current != 0)
+		return columns;
+	}
+
+	/**
+	 * @param results
+	 * @return
+	 * @throws GeppettoExecutionException
+	 */
+	private void updateSimulationTree(LEMSResultsBuffer results, AspectNode aspect, IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
+	{
+		long start = System.nanoTime();
+		IVariableWatchFeature watchFeature = ((IVariableWatchFeature) this.getFeature(GeppettoFeature.VARIABLE_WATCH_FEATURE));
+		if(watchFeature.watchListModified() && results.isComplete())
 		{
-			resultingUnit = resultingUnit.times(getUnit(current, SI.AMPERE));
+			// every state was recorded in this batch, the newly watched variables are mapped to their states and fed from it
+			_treeBuilder.build(results, aspect, _pathResolver, _changeTracker);
+			watchFeature.setWatchListModified(false);
+			_watchPlan = null;
 		}
-		float temperature = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(temperature != 0)
+		if(_watchPlan == null)
 		{
-			resultingUnit = resultingUnit.times(getUnit(temperature, SI.CELSIUS));
+			_watchPlan = compileWatchPlan(aspect, aspectConfiguration);
 		}
-		float amount = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(amount != 0)
+		if(watchFeature.watchListModified())
 		{
-			resultingUnit = resultingUnit.times(getUnit(amount, SI.MOLE));
+			// the batch was recorded before the watch list changed and may miss the newly watched states,
+			// they are mapped from the next batch where every state is recorded
+			_recordingFilter.recordAll();
 		}
-		float brightness = getDecimalNumber(Integer.parseInt(st.nextToken()));
-		if(brightness != 0)
+		_metrics.quantitiesAllocated(_watchPlan.update(results, _changeTracker));
+		// the time node gets a sample for every row added to the variables
+		for(int row = 0; row < _watchPlan.getRows(); row++)
 		{
-			resultingUnit = resultingUnit.times(getUnit(brightness, SI.CANDELA));
+			double time = _watchPlan.getRowTime(row);
+			advanceTimeStep(time - _treeTime, aspect);
+			_treeTime = time;
 		}
-		return resultingUnit;
+		long propagateStart = System.nanoTime();
+		_metrics.record(LEMSStepMetrics.Phase.TREE_UPDATE, propagateStart - start);
+		_changeTracker.propagate();
+		_metrics.record(LEMSStepMetrics.Phase.PROPAGATE, System.nanoTime() - propagateStart);
 	}
 
 	/**
-	 * @param noZeros
-	 * @param unit
-	 * @return
-	 */
-	private Unit<?> getUnit(Float scaling, Unit<?> unit)
-	{
-		switch(scaling.intValue())
-		{
-			case -12:
-				return SI.PICO(unit);
-			case -9:
-				return SI.NANO(unit);
-			case -6:
-				return SI.MICRO(unit);
-			case -3:
-				return SI.MILLI(unit);
-			case -2:
-				return SI.CENTI(unit);
-			case -1:
-				return SI.DECI(unit);
-			case 12:
-				return SI.TERA(unit);
-			case 6:
-				return SI.MEGA(unit);
-			case 3:
-				return SI.KILO(unit);
-			case 2:
-				return SI.HECTO(unit);
-			case 1:
-				return unit;
-			default:
-				return unit.times(scaling);
-		}
-	}
-
-	/**
-	 * @param noZeros
-	 * @return
+	 * Compiles the plan of the watched variables and restricts the recorded states to them unless told otherwise
+	 * 
+	 * @param aspect
+	 * @param aspectConfiguration
+	 * @return a plan containing all the watched variables of the aspect
+	 * @throws GeppettoExecutionException
 	 */
-	private float getDecimalNumber(int noZeros)
+	private LEMSWatchPlan compileWatchPlan(AspectNode aspect, IAspectConfiguration aspectConfiguration) throws GeppettoExecutionException
 	{
-		if(noZeros > 0)
+		LEMSWatchPlan watchPlan = new LEMSWatchPlan();
+		CreateLEMSWatchPlanVisitor createWatchPlanVisitor = new CreateLEMSWatchPlanVisitor(watchPlan, aspect, _pathResolver.getGeppettoToLems(aspect));
+		aspect.getParent().apply(createWatchPlanVisitor);
+		if(createWatchPlanVisitor.getError() != null)
 		{
-			char[] zeros = {};
-			if(noZeros > 1)
+			throw new GeppettoExecutionException(createWatchPlanVisitor.getError());
+		}
+		watchPlan.compile(_recordingStore);
+		watchPlan.setSampler(LEMSSampler.create(SimulatorParameters.get(aspectConfiguration, SAMPLING)));
+		watchPlan.setFeedAllSamples(!"last".equals(SimulatorParameters.get(aspectConfiguration, TREE_FEED)));
+		if(SimulatorParameters.getBoolean(aspectConfiguration, RECORD_WATCHED_ONLY, _recordWatchedOnly))
+		{
+			List<IStateIdentifier> recorded = new ArrayList<IStateIdentifier>(watchPlan.getStates());
+			if(_eventDetector != null)
 			{
-				zeros = new char[noZeros];
+				recorded.addAll(_eventDetector.getLog().getSources());
 			}
-			Arrays.fill(zeros, '0');
-			return Float.parseFloat("1" + String.valueOf(zeros));
+			_recordingFilter.recordOnly(recorded);
 		}
-		else if(noZeros < 0)
+		return watchPlan;
+	}
+
+	/**
+	 * @param str
+	 * @return
+	 */
+	public static boolean isNumeric(String str)
+	{
+		try
 		{
-			char[] zeros = new char[Math.abs(noZeros + 1)];
-			Arrays.fill(zeros, '0');
-			return Float.parseFloat("0." + String.valueOf(zeros) + "1");
+			double d = Integer.parseInt(str);
 		}
-		else
+		catch(NumberFormatException nfe)
 		{
-			return 0f;
+			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * @param dimension
+	 * @return
+	 */
+	public Unit<? extends Quantity> getUnitFromLEMSDimension(String dimension)
+	{
+		return LEMSUnits.getUnit(dimension);
 	}
 
 	@Override
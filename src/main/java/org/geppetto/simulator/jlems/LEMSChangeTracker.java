@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geppetto.core.model.runtime.ANode;
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.EntityNode;
+
+/**
+ * Records the nodes changed during a step and the simulation trees they belong to. The modified flags are set once per step for every tree, aspect and entity touched, instead of walking up to the
+ * root for every change. The nodes changed by the last step are kept so that only they need to be serialized.
+ */
+public class LEMSChangeTracker
+{
+
+	private List<ANode> _changedNodes = new ArrayList<ANode>();
+	private List<ANode> _lastStepNodes = new ArrayList<ANode>();
+	private Map<AspectSubTreeNode, Boolean> _modifiedTrees = new IdentityHashMap<AspectSubTreeNode, Boolean>();
+	private Map<AspectNode, Boolean> _modifiedAspects = new IdentityHashMap<AspectNode, Boolean>();
+	private Map<EntityNode, Boolean> _modifiedEntities = new IdentityHashMap<EntityNode, Boolean>();
+
+	/**
+	 * @param node
+	 *            a node which was created or received new values, it has to be reported once per step
+	 * @param simulationTree
+	 *            the simulation tree which contains the node
+	 */
+	public void nodeChanged(ANode node, AspectSubTreeNode simulationTree)
+	{
+		_changedNodes.add(node);
+		_modifiedTrees.put(simulationTree, Boolean.TRUE);
+	}
+
+	/**
+	 * @param simulationTree
+	 *            a simulation tree whose structure changed
+	 */
+	public void treeChanged(AspectSubTreeNode simulationTree)
+	{
+		_modifiedTrees.put(simulationTree, Boolean.TRUE);
+	}
+
+	/**
+	 * Sets the modified flags of the trees touched since the last call, and of their aspects and entities, and starts a new step
+	 */
+	public void propagate()
+	{
+		for(AspectSubTreeNode simulationTree : _modifiedTrees.keySet())
+		{
+			simulationTree.setModified(true);
+			AspectNode aspectNode = (AspectNode) simulationTree.getParent();
+			if(_modifiedAspects.put(aspectNode, Boolean.TRUE) == null)
+			{
+				aspectNode.setModified(true);
+				EntityNode entityNode = (EntityNode) aspectNode.getParentEntity();
+				if(_modifiedEntities.put(entityNode, Boolean.TRUE) == null)
+				{
+					entityNode.updateParentEntitiesFlags(true);
+				}
+			}
+		}
+		_modifiedTrees.clear();
+		_modifiedAspects.clear();
+		_modifiedEntities.clear();
+
+		List<ANode> lastStepNodes = _lastStepNodes;
+		_lastStepNodes = _changedNodes;
+		_changedNodes = lastStepNodes;
+		_changedNodes.clear();
+	}
+
+	/**
+	 * @return the nodes changed during the last step
+	 */
+	public List<ANode> getChangedNodes()
+	{
+		return Collections.unmodifiableList(_lastStepNodes);
+	}
+
+	/**
+	 * @return the instance paths of the nodes changed during the last step
+	 */
+	public Set<String> getChangedInstancePaths()
+	{
+		Set<String> instancePaths = new LinkedHashSet<String>();
+		for(ANode node : _lastStepNodes)
+		{
+			instancePaths.add(node.getInstancePath());
+		}
+		return instancePaths;
+	}
+
+	public void clear()
+	{
+		_changedNodes.clear();
+		_lastStepNodes.clear();
+		_modifiedTrees.clear();
+	}
+}
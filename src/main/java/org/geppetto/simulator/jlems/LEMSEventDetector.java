@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Finds the upward crossings of a threshold by some recorded states, such as the spikes of the membrane potentials, and appends them to an event log. The time of a crossing is interpolated
+ * linearly between the two timesteps around it. The last value of every source is kept so that crossings between two batches are found.
+ */
+public class LEMSEventDetector
+{
+
+	private double _threshold;
+	private LEMSEventLog _log;
+	private double[] _lastValues;
+
+	/**
+	 * @param sources
+	 *            the states whose crossings are recorded
+	 * @param threshold
+	 */
+	public LEMSEventDetector(List<IStateIdentifier> sources, double threshold)
+	{
+		_threshold = threshold;
+		_log = new LEMSEventLog(sources);
+		_lastValues = new double[sources.size()];
+		reset();
+	}
+
+	/**
+	 * Appends the crossings found in a batch of results to the log
+	 * 
+	 * @param results
+	 * @param timestep
+	 */
+	public void detect(LEMSResultsBuffer results, double timestep)
+	{
+		List<IStateIdentifier> sources = _log.getSources();
+		int[] columns = new int[sources.size()];
+		for(int source = 0; source < columns.length; source++)
+		{
+			columns[source] = results.getColumn(sources.get(source));
+		}
+		// the events are appended in time order, one timestep at a time
+		for(int step = 0; step < results.getSteps(); step++)
+		{
+			double time = results.getStartTime() + (step + 1) * timestep;
+			for(int source = 0; source < columns.length; source++)
+			{
+				if(columns[source] != -1)
+				{
+					detect(source, results.getValues(columns[source])[step], time, timestep);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param source
+	 *            the index of the source
+	 * @param value
+	 *            the value of the source at the given time
+	 * @param time
+	 * @param timestep
+	 *            the time elapsed since the last value of the source
+	 */
+	public void detect(int source, double value, double time, double timestep)
+	{
+		if(Double.isNaN(value))
+		{
+			return;
+		}
+		double last = _lastValues[source];
+		_lastValues[source] = value;
+		if(last < _threshold && value >= _threshold)
+		{
+			_log.append(time - timestep * (value - _threshold) / (value - last), source);
+		}
+	}
+
+	/**
+	 * @return the log where the crossings are appended
+	 */
+	public LEMSEventLog getLog()
+	{
+		return _log;
+	}
+
+	/**
+	 * @return the threshold
+	 */
+	public double getThreshold()
+	{
+		return _threshold;
+	}
+
+	/**
+	 * Forgets the last value of every source, to be called when the simulation doesn't continue from the last results
+	 */
+	public void reset()
+	{
+		Arrays.fill(_lastValues, Double.NaN);
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Keeps events, such as spikes, as the time of the event and the index of its source in two primitive arrays. An event takes 12 bytes whatever the number of timesteps, watching the spikes of a
+ * large network costs far less than recording the membrane potential of every cell. The events are appended in time order.
+ */
+public class LEMSEventLog
+{
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private List<IStateIdentifier> _sources;
+	private double[] _times = new double[INITIAL_CAPACITY];
+	private int[] _sourceIndexes = new int[INITIAL_CAPACITY];
+	private int _size = 0;
+
+	/**
+	 * @param sources
+	 *            the states the events come from, an event refers to its source by its index in this list
+	 */
+	public LEMSEventLog(List<IStateIdentifier> sources)
+	{
+		_sources = Collections.unmodifiableList(new ArrayList<IStateIdentifier>(sources));
+	}
+
+	/**
+	 * @param time
+	 * @param source
+	 *            the index of the source of the event
+	 */
+	public void append(double time, int source)
+	{
+		if(_size == _times.length)
+		{
+			_times = Arrays.copyOf(_times, _size * 2);
+			_sourceIndexes = Arrays.copyOf(_sourceIndexes, _size * 2);
+		}
+		_times[_size] = time;
+		_sourceIndexes[_size] = source;
+		_size++;
+	}
+
+	/**
+	 * @return the number of events
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @param event
+	 * @return the time of the event
+	 */
+	public double getTime(int event)
+	{
+		checkEvent(event);
+		return _times[event];
+	}
+
+	/**
+	 * @param event
+	 * @return the index of the source of the event
+	 */
+	public int getSource(int event)
+	{
+		checkEvent(event);
+		return _sourceIndexes[event];
+	}
+
+	/**
+	 * @return the states the events come from
+	 */
+	public List<IStateIdentifier> getSources()
+	{
+		return _sources;
+	}
+
+	/**
+	 * @param source
+	 *            the index of the source
+	 * @return the times of the events of the source
+	 */
+	public double[] getTimes(int source)
+	{
+		int count = 0;
+		for(int i = 0; i < _size; i++)
+		{
+			if(_sourceIndexes[i] == source)
+			{
+				count++;
+			}
+		}
+		double[] times = new double[count];
+		count = 0;
+		for(int i = 0; i < _size; i++)
+		{
+			if(_sourceIndexes[i] == source)
+			{
+				times[count++] = _times[i];
+			}
+		}
+		return times;
+	}
+
+	/**
+	 * Drops the events which happened after a given time
+	 * 
+	 * @param time
+	 */
+	public void truncate(double time)
+	{
+		while(_size > 0 && _times[_size - 1] > time)
+		{
+			_size--;
+		}
+	}
+
+	public void clear()
+	{
+		_size = 0;
+	}
+
+	/**
+	 * @param event
+	 */
+	private void checkEvent(int event)
+	{
+		if(event < 0 || event >= _size)
+		{
+			throw new IndexOutOfBoundsException("Event " + event + " not found, the log has " + _size + " events");
+		}
+	}
+}
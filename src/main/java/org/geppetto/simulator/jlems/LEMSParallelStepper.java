@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.lemsml.jlems.api.LEMSExecutionException;
+import org.lemsml.jlems.api.LEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.ILEMSSimulator;
+
+/**
+ * Advances independent LEMS simulators in parallel. The simulators are split in partitions, one per worker of a fork join pool, every partition advances its simulators into its own results
+ * container. A call to advance returns only when every partition has advanced, the results can then be recorded as one timestep.
+ */
+public class LEMSParallelStepper
+{
+
+	private static ForkJoinPool _sharedPool;
+
+	private ForkJoinPool _pool;
+	private Partition[] _partitions;
+	private ILEMSResultsContainer[] _results;
+
+	/**
+	 * @param simulators
+	 * @param pool
+	 *            the pool advancing the partitions, the simulators are split in as many partitions as the parallelism of the pool
+	 */
+	public LEMSParallelStepper(List<ILEMSSimulator> simulators, ForkJoinPool pool)
+	{
+		_pool = pool;
+		int partitions = Math.max(1, Math.min(simulators.size(), pool.getParallelism()));
+		List<List<ILEMSSimulator>> split = new ArrayList<List<ILEMSSimulator>>();
+		for(int i = 0; i < partitions; i++)
+		{
+			split.add(new ArrayList<ILEMSSimulator>());
+		}
+		for(int i = 0; i < simulators.size(); i++)
+		{
+			split.get(i % partitions).add(simulators.get(i));
+		}
+		_partitions = new Partition[partitions];
+		_results = new ILEMSResultsContainer[partitions];
+		for(int i = 0; i < partitions; i++)
+		{
+			_partitions[i] = new Partition(split.get(i).toArray(new ILEMSSimulator[split.get(i).size()]));
+		}
+		newBatch();
+	}
+
+	/**
+	 * @return a pool with one worker per core shared by every simulator of this process
+	 */
+	public static synchronized ForkJoinPool getSharedPool()
+	{
+		if(_sharedPool == null)
+		{
+			_sharedPool = new ForkJoinPool();
+		}
+		return _sharedPool;
+	}
+
+	/**
+	 * Gives every partition a new results container, to be called before the first step of a batch
+	 */
+	public void newBatch()
+	{
+		for(int i = 0; i < _partitions.length; i++)
+		{
+			_results[i] = new LEMSResultsContainer();
+			_partitions[i]._results = _results[i];
+		}
+	}
+
+	/**
+	 * Advances every simulator by one timestep
+	 * 
+	 * @return the results containers of the partitions
+	 * @throws LEMSExecutionException
+	 */
+	public ILEMSResultsContainer[] advance() throws LEMSExecutionException
+	{
+		_pool.invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute()
+			{
+				List<RecursiveAction> steps = new ArrayList<RecursiveAction>(_partitions.length);
+				for(final Partition partition : _partitions)
+				{
+					steps.add(new RecursiveAction()
+					{
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						protected void compute()
+						{
+							partition.advance();
+						}
+					});
+				}
+				invokeAll(steps);
+			}
+		});
+		for(Partition partition : _partitions)
+		{
+			if(partition._error != null)
+			{
+				LEMSExecutionException error = partition._error;
+				partition._error = null;
+				throw error;
+			}
+		}
+		return _results;
+	}
+
+	/**
+	 * @return the number of partitions advanced in parallel
+	 */
+	public int getPartitions()
+	{
+		return _partitions.length;
+	}
+
+	/**
+	 * The simulators advanced by the same worker
+	 */
+	private static class Partition
+	{
+		private ILEMSSimulator[] _simulators;
+		private ILEMSResultsContainer _results;
+		private LEMSExecutionException _error;
+
+		Partition(ILEMSSimulator[] simulators)
+		{
+			_simulators = simulators;
+		}
+
+		void advance()
+		{
+			try
+			{
+				for(ILEMSSimulator simulator : _simulators)
+				{
+					simulator.advance(_results);
+				}
+			}
+			catch(LEMSExecutionException e)
+			{
+				_error = e;
+			}
+		}
+	}
+}
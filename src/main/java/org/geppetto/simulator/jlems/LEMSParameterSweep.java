@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.lemsml.jlems.api.LEMSDocumentReader;
+import org.lemsml.jlems.api.LEMSResultsContainer;
+import org.lemsml.jlems.api.LEMSSimulator;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.ILEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.ILEMSSimulator;
+import org.lemsml.jlems.api.interfaces.ILEMSStateInstance;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Runs many variants of a LEMS model to completion on a bounded pool of threads, every variant gets its own state instances, simulators and results buffer. jLEMS can neither clone state
+ * instances nor set parameters through its API, every variant is therefore built from its own document, in which its parameters were written before it was parsed. See {@link SourceVariants} for
+ * variants written as parameter sets substituted into a LEMS source.
+ */
+public class LEMSParameterSweep
+{
+
+	private static final int BATCH_STEPS = 4096;
+
+	private static Log _logger = LogFactory.getLog(LEMSParameterSweep.class);
+
+	/**
+	 * Provides the document of every variant
+	 */
+	public interface IVariant
+	{
+		/**
+		 * @param variant
+		 *            the index of the variant
+		 * @return the document of the variant with its parameters applied, not shared with any other variant
+		 * @throws Exception
+		 */
+		ILEMSDocument getDocument(int variant) throws Exception;
+	}
+
+	/**
+	 * Variants written as a LEMS source where every parameter appears as @name@ and a set of values for every variant
+	 */
+	public static class SourceVariants implements IVariant
+	{
+		private String _source;
+		private List<Map<String, String>> _parameterSets;
+
+		/**
+		 * @param source
+		 *            the LEMS source with the parameters written as @name@
+		 * @param parameterSets
+		 *            the values of the parameters of every variant, by name
+		 */
+		public SourceVariants(String source, List<Map<String, String>> parameterSets)
+		{
+			_source = source;
+			_parameterSets = new ArrayList<Map<String, String>>(parameterSets);
+		}
+
+		/**
+		 * @return the number of variants
+		 */
+		public int size()
+		{
+			return _parameterSets.size();
+		}
+
+		/**
+		 * @param variant
+		 *            the index of the variant
+		 * @return the LEMS source with the parameters of the variant substituted
+		 */
+		public String getSource(int variant)
+		{
+			String source = _source;
+			for(Map.Entry<String, String> parameter : _parameterSets.get(variant).entrySet())
+			{
+				source = source.replace("@" + parameter.getKey() + "@", parameter.getValue());
+			}
+			return source;
+		}
+
+		@Override
+		public ILEMSDocument getDocument(int variant) throws Exception
+		{
+			return new LEMSDocumentReader().readModel(getSource(variant));
+		}
+	}
+
+	private IVariant _variant;
+	private int _threads;
+
+	/**
+	 * @param variant
+	 *            provides the document of every variant
+	 * @param threads
+	 *            the maximum number of variants simulated at the same time
+	 */
+	public LEMSParameterSweep(IVariant variant, int threads)
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("A sweep needs at least one thread, found " + threads);
+		}
+		_variant = variant;
+		_threads = threads;
+	}
+
+	/**
+	 * @param variant
+	 *            provides the document of every variant
+	 */
+	public LEMSParameterSweep(IVariant variant)
+	{
+		this(variant, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Simulates every variant from the start to the runtime of its run configuration
+	 * 
+	 * @param variants
+	 *            the number of variants
+	 * @return the recorded states of every variant at full resolution, in the order of the variants
+	 * @throws GeppettoExecutionException
+	 *             if a variant fails, the variants not finished are cancelled
+	 */
+	public List<LEMSRecordingStore> run(int variants) throws GeppettoExecutionException
+	{
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(variants, _threads)));
+		try
+		{
+			List<Future<LEMSRecordingStore>> runs = new ArrayList<Future<LEMSRecordingStore>>();
+			for(int i = 0; i < variants; i++)
+			{
+				final int variant = i;
+				runs.add(executor.submit(new Callable<LEMSRecordingStore>()
+				{
+					@Override
+					public LEMSRecordingStore call() throws Exception
+					{
+						return runVariant(variant);
+					}
+				}));
+			}
+			List<LEMSRecordingStore> recordings = new ArrayList<LEMSRecordingStore>();
+			for(int i = 0; i < runs.size(); i++)
+			{
+				try
+				{
+					recordings.add(runs.get(i).get());
+				}
+				catch(ExecutionException e)
+				{
+					_logger.error("LEMS variant " + i + " of the sweep failed", e.getCause());
+					throw e;
+				}
+			}
+			_logger.info(variants + " LEMS variants simulated on " + Math.min(variants, _threads) + " threads in " + (System.nanoTime() - start) / 1000000 + "ms");
+			return recordings;
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			throw new GeppettoExecutionException(cause instanceof Exception ? (Exception) cause : e);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new GeppettoExecutionException(e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param variant
+	 * @return the recorded states of the variant
+	 * @throws Exception
+	 */
+	private LEMSRecordingStore runVariant(int variant) throws Exception
+	{
+		// every variant has its own document which is built once, the builds can run concurrently and
+		// don't go through the pool of the simulator
+		JLEMSSimulatorService.BuiltModel model = JLEMSSimulatorService.build(_variant.getDocument(variant));
+		ILEMSRunConfiguration runConfig = model.getRunConfig();
+		List<ILEMSSimulator> simulators = new ArrayList<ILEMSSimulator>();
+		for(ILEMSStateInstance instance : model.getStateInstances())
+		{
+			ILEMSSimulator simulator = new LEMSSimulator();
+			simulator.initialize(instance, runConfig);
+			simulators.add(simulator);
+		}
+
+		long remaining = Math.round(runConfig.getRuntime() / runConfig.getTimestep());
+		LEMSResultsBuffer results = new LEMSResultsBuffer((int) Math.min(remaining, BATCH_STEPS));
+		LEMSRecordingStore recordings = new LEMSRecordingStore(0);
+		while(remaining > 0)
+		{
+			int batch = (int) Math.min(remaining, BATCH_STEPS);
+			results.clear();
+			// jLEMS appends every value to its container, a new one per batch bounds what it holds
+			ILEMSResultsContainer lemsResults = new LEMSResultsContainer();
+			for(int step = 0; step < batch; step++)
+			{
+				for(ILEMSSimulator simulator : simulators)
+				{
+					simulator.advance(lemsResults);
+				}
+				results.record(lemsResults);
+			}
+			List<IStateIdentifier> states = results.getStates();
+			for(int i = 0; i < states.size(); i++)
+			{
+				recordings.getOrCreateRecording(states.get(i)).append(results.getValues(i), 0, batch);
+			}
+			remaining -= batch;
+		}
+		return recordings;
+	}
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The mappings between the paths of the LEMS states and the instance paths of the Geppetto variables of one aspect. A state is mapped only from the ids of the entities of the aspect and from
+ * their aspects, the sessions which loaded the same model share the mappings read-mostly. What is shared is the two maps and the path strings they hold, one copy instead of one per session; the
+ * runtime tree, the built models and the recordings of every session are still its own, jLEMS doesn't separate the structure of a state instance from its values. The saving hasn't been measured.
+ * 
+ * The shared mappings are keyed by the instance path of the aspect and by a digest of the structure of its entity, no document or runtime node is kept by them. They are referenced weakly, the
+ * mappings are released once no session uses them.
+ */
+public class LEMSPathMappings
+{
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static Map<String, SharedReference> _shared = new HashMap<String, SharedReference>();
+	private static ReferenceQueue<LEMSPathMappings> _released = new ReferenceQueue<LEMSPathMappings>();
+
+	private ConcurrentMap<String, String> _lemsToGeppetto = new ConcurrentHashMap<String, String>();
+	private ConcurrentMap<String, String> _geppettoToLems = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @param aspectPath
+	 *            the instance path of the aspect
+	 * @param structure
+	 *            the ids of the entities the states of the aspect are mapped to and of their aspects, as listed by {@link LEMSPathResolver}
+	 * @return the mappings shared by every session where the aspect has the same structure
+	 */
+	public static synchronized LEMSPathMappings getShared(String aspectPath, String structure)
+	{
+		purge();
+		String key = aspectPath + "#" + digest(structure);
+		SharedReference reference = _shared.get(key);
+		LEMSPathMappings mappings = reference != null ? reference.get() : null;
+		if(mappings == null)
+		{
+			mappings = new LEMSPathMappings();
+			_shared.put(key, new SharedReference(key, mappings));
+		}
+		return mappings;
+	}
+
+	/**
+	 * @return the number of shared mappings still used by a session
+	 */
+	public static synchronized int getSharedCount()
+	{
+		purge();
+		return _shared.size();
+	}
+
+	/**
+	 * Forgets every shared mapping, the sessions using them keep their own reference
+	 */
+	public static synchronized void clearShared()
+	{
+		_shared.clear();
+	}
+
+	/**
+	 * Removes the shared mappings no session uses anymore
+	 */
+	private static void purge()
+	{
+		Reference<? extends LEMSPathMappings> released;
+		while((released = _released.poll()) != null)
+		{
+			String key = ((SharedReference) released)._key;
+			if(_shared.get(key) == released)
+			{
+				_shared.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * A weak reference to shared mappings which knows its key
+	 */
+	private static class SharedReference extends WeakReference<LEMSPathMappings>
+	{
+		private String _key;
+
+		SharedReference(String key, LEMSPathMappings mappings)
+		{
+			super(mappings, _released);
+			_key = key;
+		}
+	}
+
+	/**
+	 * @param structure
+	 * @return the SHA-1 digest of the structure in hexadecimal
+	 */
+	private static String digest(String structure)
+	{
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(structure.getBytes(UTF8));
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for(byte b : hash)
+			{
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			// every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds a mapping, if the state was already mapped the existing one is kept
+	 * 
+	 * @param statePath
+	 * @param geppettoPath
+	 * @return the instance path mapped to the state, the same instance for every session
+	 */
+	public String put(String statePath, String geppettoPath)
+	{
+		String existing = _lemsToGeppetto.putIfAbsent(statePath, geppettoPath);
+		if(existing != null)
+		{
+			return existing;
+		}
+		_geppettoToLems.put(geppettoPath, statePath);
+		return geppettoPath;
+	}
+
+	/**
+	 * @param statePath
+	 * @return the instance path of the Geppetto variable showing the LEMS state, null if the state wasn't mapped
+	 */
+	public String getGeppettoPath(String statePath)
+	{
+		return _lemsToGeppetto.get(statePath);
+	}
+
+	/**
+	 * @param geppettoPath
+	 * @return the path of the LEMS state shown by the Geppetto variable, null if no state was mapped to it
+	 */
+	public String getLemsPath(String geppettoPath)
+	{
+		return _geppettoToLems.get(geppettoPath);
+	}
+
+	/**
+	 * @return the instance paths of the Geppetto variables mapped to the paths of the LEMS states
+	 */
+	public Map<String, String> getGeppettoToLems()
+	{
+		return Collections.unmodifiableMap(_geppettoToLems);
+	}
+
+	/**
+	 * @return the number of states mapped
+	 */
+	public int size()
+	{
+		return _lemsToGeppetto.size();
+	}
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.geppetto.core.model.runtime.ANode;
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
+import org.geppetto.core.model.runtime.EntityNode;
+import org.geppetto.core.utilities.VariablePathSerializer;
+
+/**
+ * Maps the paths of the LEMS states to the simulation trees and to the instance paths of the Geppetto variables showing them. The children of every entity are indexed by id the first time they
+ * are searched and the entity of every state is found only once, so that watching variables of large networks doesn't scan the tree again. When sharing is enabled the path mappings are shared
+ * with every session where the aspect has the same structure, see {@link LEMSPathMappings}, a session keeps its own simulation tree of every entity and indexes.
+ */
+public class LEMSPathResolver
+{
+
+	// Geppetto doesn't support nodes that have numbers as names, .digits. is replaced with [digits].
+	private static final Pattern ARRAY_INDEX = Pattern.compile("\\.(\\d*)\\.");
+
+	private static final Target NO_TARGET = new Target(null, null);
+
+	private boolean _shared = false;
+	private Map<AspectNode, AspectPaths> _aspectPaths = new IdentityHashMap<AspectNode, AspectPaths>();
+	private Map<EntityNode, ChildIndex> _childIndexes = new IdentityHashMap<EntityNode, ChildIndex>();
+
+	/**
+	 * @param shared
+	 *            true to share the path mappings with the other sessions where the aspects have the same structure, false to keep them private
+	 */
+	public void setShared(boolean shared)
+	{
+		_shared = shared;
+		_aspectPaths.clear();
+	}
+
+	/**
+	 * @param statePath
+	 *            the path of the LEMS state with dots as separators
+	 * @param simulationTree
+	 *            the simulation tree of the aspect being simulated
+	 * @return the simulation tree containing the state, null if the state doesn't belong to the aspect
+	 */
+	public AspectSubTreeNode resolve(String statePath, AspectSubTreeNode simulationTree)
+	{
+		if(statePath.isEmpty())
+		{
+			return null;
+		}
+		AspectNode parentAspect = (AspectNode) simulationTree.getParent();
+		AspectPaths paths = getAspectPaths(parentAspect);
+
+		int first = statePath.indexOf('.');
+		String nt1 = first == -1 ? statePath : statePath.substring(0, first);
+		String nt2 = "";
+		if(first != -1)
+		{
+			int second = statePath.indexOf('.', first + 1);
+			nt2 = second == -1 ? statePath.substring(first + 1) : statePath.substring(first + 1, second);
+		}
+		boolean arrayElement = isNumeric(nt2);
+		String targetKey = arrayElement ? nt1 + "." + nt2 : nt1;
+		Target target = paths._targets.get(targetKey);
+		if(target == null)
+		{
+			target = findTarget(nt1, nt2, arrayElement, parentAspect);
+			paths._targets.put(targetKey, target);
+		}
+		if(target == NO_TARGET)
+		{
+			return null;
+		}
+
+		if(paths._mappings.getGeppettoPath(statePath) == null)
+		{
+			String post = statePath.substring(statePath.indexOf(target._pre) + target._pre.length());
+			if(post.charAt(0) == '.')
+			{
+				post = post.substring(1);
+			}
+			post = ARRAY_INDEX.matcher(post).replaceAll("\\[$1\\]\\.");
+			paths._mappings.put(statePath, target._simulationTree.getInstancePath() + "." + post);
+		}
+		return target._simulationTree;
+	}
+
+	/**
+	 * @param nt1
+	 *            the first token of the path of the state
+	 * @param nt2
+	 *            the second token of the path of the state
+	 * @param arrayElement
+	 *            true if the second token is an index
+	 * @param parentAspect
+	 * @return the prefix of the paths of the states of the entity found and the simulation tree of its aspect
+	 */
+	private Target findTarget(String nt1, String nt2, boolean arrayElement, AspectNode parentAspect)
+	{
+		EntityNode parentEntity = (EntityNode) parentAspect.getParent();
+		String pre = "";
+		ChildIndex index = getChildIndex(parentEntity);
+		int byId = index.indexOf(nt1);
+		int byArrayName = arrayElement ? index.indexOf(VariablePathSerializer.getArrayName(nt1, nt2)) : -1;
+		// the first matching child wins as when scanning the children in order
+		if(byId != -1 && (byArrayName == -1 || byId < byArrayName))
+		{
+			pre = nt1;
+			parentEntity = (EntityNode) parentEntity.getChildren().get(byId);
+		}
+		else if(byArrayName != -1)
+		{
+			pre = nt1 + "." + nt2;
+			parentEntity = (EntityNode) parentEntity.getChildren().get(byArrayName);
+		}
+
+		for(AspectNode a : parentEntity.getAspects())
+		{
+			if(a.getId().equals(parentAspect.getId()))
+			{
+				return new Target(pre, a.getSubTree(AspectTreeType.SIMULATION_TREE));
+			}
+		}
+		return NO_TARGET;
+	}
+
+	/**
+	 * @param aspect
+	 * @return the paths resolved for the aspect, found again if entities were added since they were
+	 */
+	private AspectPaths getAspectPaths(AspectNode aspect)
+	{
+		List<ANode> children = ((EntityNode) aspect.getParent()).getChildren();
+		AspectPaths paths = _aspectPaths.get(aspect);
+		if(paths == null || paths._childCount != children.size())
+		{
+			paths = new AspectPaths(_shared ? LEMSPathMappings.getShared(aspect.getInstancePath(), getStructure(children)) : new LEMSPathMappings(), children.size());
+			_aspectPaths.put(aspect, paths);
+		}
+		return paths;
+	}
+
+	/**
+	 * @param children
+	 *            the children of the entity of an aspect
+	 * @return the ids of the children, in order, with the ids of their aspects. The states of the aspect are mapped only from them.
+	 */
+	private static String getStructure(List<ANode> children)
+	{
+		StringBuilder structure = new StringBuilder();
+		for(ANode child : children)
+		{
+			structure.append(child.getId());
+			if(child instanceof EntityNode)
+			{
+				for(AspectNode a : ((EntityNode) child).getAspects())
+				{
+					structure.append(' ').append(a.getId());
+				}
+			}
+			structure.append('\n');
+		}
+		return structure.toString();
+	}
+
+	/**
+	 * @param entity
+	 * @return the index of the children of the entity, rebuilt if children were added since it was built
+	 */
+	private ChildIndex getChildIndex(EntityNode entity)
+	{
+		List<ANode> children = entity.getChildren();
+		ChildIndex index = _childIndexes.get(entity);
+		if(index == null || index._size != children.size())
+		{
+			index = new ChildIndex(children);
+			_childIndexes.put(entity, index);
+		}
+		return index;
+	}
+
+	/**
+	 * @param str
+	 * @return
+	 */
+	private static boolean isNumeric(String str)
+	{
+		if(str.isEmpty())
+		{
+			return false;
+		}
+		return JLEMSSimulatorService.isNumeric(str);
+	}
+
+	/**
+	 * @param statePath
+	 * @param simulationTree
+	 *            the simulation tree of the aspect being simulated
+	 * @return the instance path of the Geppetto variable showing the LEMS state, null if the state wasn't resolved
+	 */
+	public String getGeppettoPath(String statePath, AspectSubTreeNode simulationTree)
+	{
+		return getAspectPaths((AspectNode) simulationTree.getParent())._mappings.getGeppettoPath(statePath);
+	}
+
+	/**
+	 * @param geppettoPath
+	 * @param aspect
+	 * @return the path of the LEMS state shown by the Geppetto variable, null if no state was resolved to it
+	 */
+	public String getLemsPath(String geppettoPath, AspectNode aspect)
+	{
+		return getAspectPaths(aspect)._mappings.getLemsPath(geppettoPath);
+	}
+
+	/**
+	 * @param aspect
+	 * @return the instance paths of the Geppetto variables of the aspect mapped to the paths of the LEMS states
+	 */
+	public Map<String, String> getGeppettoToLems(AspectNode aspect)
+	{
+		return getAspectPaths(aspect)._mappings.getGeppettoToLems();
+	}
+
+	/**
+	 * Forgets the simulation trees found and every index, the shared mappings are released once no other session uses them
+	 */
+	public void clear()
+	{
+		_aspectPaths.clear();
+		_childIndexes.clear();
+	}
+
+	/**
+	 * The mappings of an aspect and the entities found for it in this session, by the first tokens of the paths of the states
+	 */
+	private static class AspectPaths
+	{
+		private LEMSPathMappings _mappings;
+		private Map<String, Target> _targets = new HashMap<String, Target>();
+		private int _childCount;
+
+		AspectPaths(LEMSPathMappings mappings, int childCount)
+		{
+			_mappings = mappings;
+			_childCount = childCount;
+		}
+	}
+
+	/**
+	 * The prefix of the paths of the states of an entity and the simulation tree where they are shown
+	 */
+	private static class Target
+	{
+		private String _pre;
+		private AspectSubTreeNode _simulationTree;
+
+		Target(String pre, AspectSubTreeNode simulationTree)
+		{
+			_pre = pre;
+			_simulationTree = simulationTree;
+		}
+	}
+
+	/**
+	 * The position of the first child with a given id
+	 */
+	private static class ChildIndex
+	{
+		private Map<String, Integer> _positions = new HashMap<String, Integer>();
+		private int _size;
+
+		ChildIndex(List<ANode> children)
+		{
+			_size = children.size();
+			for(int i = 0; i < _size; i++)
+			{
+				String id = children.get(i).getId();
+				if(!_positions.containsKey(id))
+				{
+					_positions.put(id, i);
+				}
+			}
+		}
+
+		int indexOf(String id)
+		{
+			Integer position = _positions.get(id);
+			return position == null ? -1 : position;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.lemsml.jlems.api.interfaces.ILEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+import org.lemsml.jlems.api.interfaces.IStateRecord;
+
+/**
+ * Restricts the states recorded by jLEMS to the ones which are watched. The state records of the output specification of the documents are remembered so that they can be restored when the watch
+ * list changes. Changes are requested by the thread updating the tree and applied by the thread advancing the simulators, between two steps.
+ */
+public class LEMSRecordingFilter
+{
+
+	private List<ILEMSRunConfiguration> _runConfigs;
+	private List<List<IStateRecord>> _documentRecords = new ArrayList<List<IStateRecord>>();
+	// null to record all the states of the output specification
+	private AtomicReference<Set<IStateIdentifier>> _pending = new AtomicReference<Set<IStateIdentifier>>();
+	private volatile boolean _changeRequested = false;
+	private int _recordedStates;
+	private boolean _recordingAll = true;
+
+	/**
+	 * @param runConfigs
+	 *            the run configurations the simulators were initialized with
+	 */
+	public LEMSRecordingFilter(List<ILEMSRunConfiguration> runConfigs)
+	{
+		_runConfigs = runConfigs;
+		for(ILEMSRunConfiguration runConfig : runConfigs)
+		{
+			_documentRecords.add(new ArrayList<IStateRecord>(runConfig.getRecordedStates()));
+			_recordedStates += runConfig.getRecordedStates().size();
+		}
+	}
+
+	/**
+	 * Requests to record every state of the output specification of the documents
+	 */
+	public void recordAll()
+	{
+		_pending.set(null);
+		_changeRequested = true;
+	}
+
+	/**
+	 * Requests to record only some of the states of the output specification of the documents
+	 * 
+	 * @param states
+	 */
+	public void recordOnly(Collection<IStateIdentifier> states)
+	{
+		_pending.set(new HashSet<IStateIdentifier>(states));
+		_changeRequested = true;
+	}
+
+	/**
+	 * Applies the last change requested, to be called by the thread advancing the simulators before a step
+	 */
+	public void apply()
+	{
+		if(!_changeRequested)
+		{
+			return;
+		}
+		_changeRequested = false;
+		Set<IStateIdentifier> states = _pending.get();
+		_recordingAll = states == null;
+		_recordedStates = 0;
+		for(int i = 0; i < _runConfigs.size(); i++)
+		{
+			List<IStateRecord> recordedStates = _runConfigs.get(i).getRecordedStates();
+			recordedStates.clear();
+			for(IStateRecord record : _documentRecords.get(i))
+			{
+				if(states == null || states.contains(record.getState()))
+				{
+					recordedStates.add(record);
+				}
+			}
+			_recordedStates += recordedStates.size();
+		}
+	}
+
+	/**
+	 * @return every state of the output specification of the documents
+	 */
+	public List<IStateIdentifier> getDocumentStates()
+	{
+		List<IStateIdentifier> states = new ArrayList<IStateIdentifier>();
+		for(List<IStateRecord> records : _documentRecords)
+		{
+			for(IStateRecord record : records)
+			{
+				states.add(record.getState());
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * @return true if every state of the output specification is recorded after the last change applied
+	 */
+	public boolean isRecordingAll()
+	{
+		return _recordingAll;
+	}
+
+	/**
+	 * @return the number of states recorded after the last change applied
+	 */
+	public int getRecordedStates()
+	{
+		return _recordedStates;
+	}
+}
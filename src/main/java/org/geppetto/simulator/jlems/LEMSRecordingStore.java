@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Keeps the values of the watched LEMS states as primitive doubles, one ring buffer per state. The retention window bounds the memory used by long simulations, the runtime tree can then be fed
+ * only with the most recent samples while the full history stays available here.
+ */
+public class LEMSRecordingStore
+{
+
+	private int _window;
+	private Map<IStateIdentifier, DoubleRingBuffer> _recordings = new LinkedHashMap<IStateIdentifier, DoubleRingBuffer>();
+
+	/**
+	 * @param window
+	 *            the maximum number of samples retained for every state, 0 to retain every sample
+	 */
+	public LEMSRecordingStore(int window)
+	{
+		if(window < 0)
+		{
+			throw new IllegalArgumentException("The retention window can't be negative, found " + window);
+		}
+		_window = window;
+	}
+
+	/**
+	 * @param state
+	 * @return the recording of the state, created if the state wasn't recorded yet
+	 */
+	public DoubleRingBuffer getOrCreateRecording(IStateIdentifier state)
+	{
+		DoubleRingBuffer recording = _recordings.get(state);
+		if(recording == null)
+		{
+			recording = new DoubleRingBuffer(_window);
+			_recordings.put(state, recording);
+		}
+		return recording;
+	}
+
+	/**
+	 * @param state
+	 * @return the recording of the state or null if the state was never recorded
+	 */
+	public DoubleRingBuffer getRecording(IStateIdentifier state)
+	{
+		return _recordings.get(state);
+	}
+
+	/**
+	 * @return the recorded states
+	 */
+	public Set<IStateIdentifier> getStates()
+	{
+		return _recordings.keySet();
+	}
+
+	/**
+	 * @return the retention window, 0 if every sample is retained
+	 */
+	public int getWindow()
+	{
+		return _window;
+	}
+
+	public void clear()
+	{
+		_recordings.clear();
+	}
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lemsml.jlems.api.ALEMSValue;
+import org.lemsml.jlems.api.LEMSDoubleValue;
+import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Collects the samples produced by several consecutive jLEMS timesteps so that they can be pushed into the runtime tree in a single pass. Values are kept as primitive doubles, one column per
+ * recorded state; states whose value is not a double are stored as NaN. Columns are never removed so that their index can be used by a compiled watch plan while the layout doesn't change, a
+ * buffer copied from another one shares its layout. A column whose state is no longer recorded holds NaN and is reported as not recorded in the batch.
+ */
+public class LEMSResultsBuffer
+{
+
+	private List<IStateIdentifier> _states = new ArrayList<IStateIdentifier>();
+	private Map<IStateIdentifier, Integer> _columns = new HashMap<IStateIdentifier, Integer>();
+	private List<String> _dimensions = new ArrayList<String>();
+	private double[][] _values = new double[0][];
+	// the columns recorded since the buffer was cleared
+	private BitSet _recorded = new BitSet();
+	private int _capacity;
+	private int _steps = 0;
+	private Object _layout = new Object();
+	private int _layoutVersion = 0;
+	private double _startTime = 0;
+	private double _timestep = 0;
+	private boolean _complete = true;
+
+	/**
+	 * @param capacity
+	 *            the number of timesteps expected in this buffer, the buffer grows if more are recorded
+	 */
+	public LEMSResultsBuffer(int capacity)
+	{
+		_capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Appends, as a single timestep, the last value of every state found in the results
+	 * 
+	 * @param results
+	 *            the results of one or more simulators which advanced by the same timestep
+	 */
+	public void record(ILEMSResultsContainer... results)
+	{
+		ensureCapacity(_steps + 1);
+		for(ILEMSResultsContainer container : results)
+		{
+			for(IStateIdentifier state : container.getStates().keySet())
+			{
+				Integer column = _columns.get(state);
+				if(column == null)
+				{
+					column = addColumn(state, container.getState(state).getDimension());
+				}
+				ALEMSValue lemsValue = container.getState(state).getLastValue();
+				_recorded.set(column);
+				_values[column][_steps] = lemsValue instanceof LEMSDoubleValue ? ((LEMSDoubleValue) lemsValue).getAsDouble() : Double.NaN;
+			}
+		}
+		_steps++;
+	}
+
+	/**
+	 * @param state
+	 * @param dimension
+	 * @return the index of the new column
+	 */
+	private int addColumn(IStateIdentifier state, String dimension)
+	{
+		int column = _states.size();
+		_states.add(state);
+		_dimensions.add(dimension);
+		_columns.put(state, column);
+		_values = Arrays.copyOf(_values, column + 1);
+		_values[column] = new double[_capacity];
+		Arrays.fill(_values[column], Double.NaN);
+		_layoutVersion++;
+		return column;
+	}
+
+	/**
+	 * @param steps
+	 */
+	private void ensureCapacity(int steps)
+	{
+		if(steps > _capacity)
+		{
+			int previous = _capacity;
+			_capacity = Math.max(steps, _capacity * 2);
+			for(int i = 0; i < _values.length; i++)
+			{
+				_values[i] = Arrays.copyOf(_values[i], _capacity);
+				Arrays.fill(_values[i], previous, _capacity, Double.NaN);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of timesteps recorded
+	 */
+	public int getSteps()
+	{
+		return _steps;
+	}
+
+	/**
+	 * @return the states recorded in this buffer, in column order
+	 */
+	public List<IStateIdentifier> getStates()
+	{
+		return _states;
+	}
+
+	/**
+	 * @param state
+	 * @return true if the state was recorded
+	 */
+	public boolean contains(IStateIdentifier state)
+	{
+		return _columns.containsKey(state);
+	}
+
+	/**
+	 * @param state
+	 * @return the column of the state or -1 if the state was never recorded
+	 */
+	public int getColumn(IStateIdentifier state)
+	{
+		Integer column = _columns.get(state);
+		return column == null ? -1 : column;
+	}
+
+	/**
+	 * @param column
+	 * @return true if the state of the column was recorded in the steps of this buffer
+	 */
+	public boolean isRecorded(int column)
+	{
+		return _recorded.get(column);
+	}
+
+	/**
+	 * @return an object identifying the buffers whose columns are assigned in the same order
+	 */
+	public Object getLayout()
+	{
+		return _layout;
+	}
+
+	/**
+	 * @return a number which changes every time a column is added
+	 */
+	public int getLayoutVersion()
+	{
+		return _layoutVersion;
+	}
+
+	/**
+	 * @param column
+	 * @return the recorded values, only the first getSteps() elements are meaningful
+	 */
+	public double[] getValues(int column)
+	{
+		return _values[column];
+	}
+
+	/**
+	 * @param state
+	 * @return the recorded values, only the first getSteps() elements are meaningful
+	 */
+	public double[] getValues(IStateIdentifier state)
+	{
+		return _values[_columns.get(state)];
+	}
+
+	/**
+	 * @param state
+	 * @return the LEMS dimension of the state, null if jLEMS didn't give one
+	 */
+	public String getDimension(IStateIdentifier state)
+	{
+		return _dimensions.get(_columns.get(state));
+	}
+
+	/**
+	 * @return the simulation time before the first step in this buffer
+	 */
+	public double getStartTime()
+	{
+		return _startTime;
+	}
+
+	/**
+	 * @param startTime
+	 */
+	public void setStartTime(double startTime)
+	{
+		_startTime = startTime;
+	}
+
+	/**
+	 * @return the simulation time advanced by every step in this buffer
+	 */
+	public double getTimestep()
+	{
+		return _timestep;
+	}
+
+	/**
+	 * @param timestep
+	 */
+	public void setTimestep(double timestep)
+	{
+		_timestep = timestep;
+	}
+
+	/**
+	 * @param step
+	 * @return the simulation time at the end of the step
+	 */
+	public double getTime(int step)
+	{
+		return _startTime + (step + 1) * _timestep;
+	}
+
+	/**
+	 * @return true if every state of the output specification was recorded in this buffer, false if the states were restricted to the watched ones
+	 */
+	public boolean isComplete()
+	{
+		return _complete;
+	}
+
+	/**
+	 * @param complete
+	 */
+	public void setComplete(boolean complete)
+	{
+		_complete = complete;
+	}
+
+	/**
+	 * Copies the samples and the layout of this buffer into another one
+	 * 
+	 * @param target
+	 */
+	public void copyTo(LEMSResultsBuffer target)
+	{
+		if(target._layout != _layout || target._layoutVersion != _layoutVersion)
+		{
+			target._states = new ArrayList<IStateIdentifier>(_states);
+			target._columns = new HashMap<IStateIdentifier, Integer>(_columns);
+			target._dimensions = new ArrayList<String>(_dimensions);
+			target._values = Arrays.copyOf(target._values, _values.length);
+			for(int i = 0; i < _values.length; i++)
+			{
+				if(target._values[i] == null)
+				{
+					target._values[i] = new double[target._capacity];
+					Arrays.fill(target._values[i], Double.NaN);
+				}
+			}
+			target._layout = _layout;
+			target._layoutVersion = _layoutVersion;
+		}
+		target.ensureCapacity(_steps);
+		for(int i = 0; i < _values.length; i++)
+		{
+			System.arraycopy(_values[i], 0, target._values[i], 0, _steps);
+		}
+		target._steps = _steps;
+		target._recorded = (BitSet) _recorded.clone();
+		target._startTime = _startTime;
+		target._timestep = _timestep;
+		target._complete = _complete;
+	}
+
+	/**
+	 * Forgets the recorded samples, the columns are retained to be reused by the next batch
+	 */
+	public void clear()
+	{
+		for(double[] values : _values)
+		{
+			Arrays.fill(values, 0, _steps, Double.NaN);
+		}
+		_steps = 0;
+		_recorded.clear();
+	}
+}
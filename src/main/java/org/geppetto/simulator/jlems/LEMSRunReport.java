@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+/**
+ * What a run of jLEMS to completion has done and how fast it did it
+ */
+public class LEMSRunReport
+{
+
+	private long _steps;
+	private double _simulatedTime;
+	private long _elapsedNanos;
+
+	/**
+	 * @param steps
+	 *            the number of timesteps advanced
+	 * @param simulatedTime
+	 *            the simulated time in seconds
+	 * @param elapsedNanos
+	 *            the wall clock time taken in nanoseconds
+	 */
+	public LEMSRunReport(long steps, double simulatedTime, long elapsedNanos)
+	{
+		_steps = steps;
+		_simulatedTime = simulatedTime;
+		_elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the number of timesteps advanced
+	 */
+	public long getSteps()
+	{
+		return _steps;
+	}
+
+	/**
+	 * @return the simulated time in seconds
+	 */
+	public double getSimulatedTime()
+	{
+		return _simulatedTime;
+	}
+
+	/**
+	 * @return the wall clock time taken in seconds
+	 */
+	public double getElapsedTime()
+	{
+		return _elapsedNanos / 1e9;
+	}
+
+	/**
+	 * @return the simulated seconds per wall clock second
+	 */
+	public double getThroughput()
+	{
+		return _elapsedNanos == 0 ? Double.POSITIVE_INFINITY : _simulatedTime / getElapsedTime();
+	}
+
+	@Override
+	public String toString()
+	{
+		return _steps + " steps, " + _simulatedTime + "s simulated in " + getElapsedTime() + "s (" + getThroughput() + " simulated s/s)";
+	}
+}
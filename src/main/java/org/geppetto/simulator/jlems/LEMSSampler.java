@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.Arrays;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+
+/**
+ * Chooses which steps of a batch are added to the runtime tree. The watched variables of an aspect share the time node of the tree, so a step is either kept for every variable or for none of
+ * them and the time node is advanced once for every kept step. A sampler is kept for the whole life of a watch plan so that its state carries over from one batch to the next, the steps it drops
+ * are still appended to the recording store at full resolution.
+ * 
+ * The policies are written as "every:N" to keep one step every N, "envelope:N" to keep the minimum and the maximum of every variable over every window of N steps, in the order they were found and
+ * both at the time of the last step of the window, or "threshold:D" to keep a step only when a variable differs by more than D from its last kept value. NaN samples are ignored by the envelope and
+ * the threshold.
+ */
+public abstract class LEMSSampler
+{
+
+	/**
+	 * Chooses the steps to keep and copies their values into the output
+	 * 
+	 * @param values
+	 *            the samples of every watched variable, by variable and then by step
+	 * @param variables
+	 *            the number of watched variables
+	 * @param steps
+	 *            the number of steps in the batch
+	 * @param rows
+	 *            where the step whose time is shown by every kept row is written, it must hold at least steps values
+	 * @param out
+	 *            where the values of every kept row are written, by variable and then by row, every array must hold at least steps values
+	 * @return the number of rows kept
+	 */
+	public abstract int sample(double[][] values, int variables, int steps, int[] rows, double[][] out);
+
+	/**
+	 * @param policy
+	 *            the policy written as described in the class comment, null, empty or "all" to keep every step
+	 * @return a new sampler for the policy or null if every step has to be kept
+	 * @throws GeppettoExecutionException
+	 */
+	public static LEMSSampler create(String policy) throws GeppettoExecutionException
+	{
+		if(policy == null || policy.trim().isEmpty() || policy.trim().equals("all"))
+		{
+			return null;
+		}
+		int separator = policy.indexOf(':');
+		if(separator != -1)
+		{
+			String name = policy.substring(0, separator).trim();
+			String argument = policy.substring(separator + 1).trim();
+			try
+			{
+				if(name.equals("every"))
+				{
+					int n = Integer.parseInt(argument);
+					if(n >= 1)
+					{
+						return n == 1 ? null : new EveryNth(n);
+					}
+				}
+				else if(name.equals("envelope"))
+				{
+					int n = Integer.parseInt(argument);
+					if(n >= 2)
+					{
+						return new Envelope(n);
+					}
+				}
+				else if(name.equals("threshold"))
+				{
+					double delta = Double.parseDouble(argument);
+					if(delta >= 0)
+					{
+						return new ChangeThreshold(delta);
+					}
+				}
+			}
+			catch(NumberFormatException e)
+			{
+				// handled below
+			}
+		}
+		throw new GeppettoExecutionException("Invalid sampling policy: " + policy);
+	}
+
+	/**
+	 * Keeps the last step of every N
+	 */
+	static class EveryNth extends LEMSSampler
+	{
+		private int _n;
+		private int _count = 0;
+
+		EveryNth(int n)
+		{
+			_n = n;
+		}
+
+		@Override
+		public int sample(double[][] values, int variables, int steps, int[] rows, double[][] out)
+		{
+			int kept = 0;
+			for(int step = 0; step < steps; step++)
+			{
+				if(++_count == _n)
+				{
+					_count = 0;
+					rows[kept] = step;
+					for(int v = 0; v < variables; v++)
+					{
+						out[v][kept] = values[v][step];
+					}
+					kept++;
+				}
+			}
+			return kept;
+		}
+	}
+
+	/**
+	 * Keeps two rows for every window of N steps holding the minimum and the maximum of every variable, a variable which is flat over the window gets the same value twice and a variable with no
+	 * number in the window gets NaN
+	 */
+	static class Envelope extends LEMSSampler
+	{
+		private int _n;
+		private int _count = 0;
+		private double[] _min = new double[0];
+		private double[] _max = new double[0];
+		private int[] _minIndex = new int[0];
+		private int[] _maxIndex = new int[0];
+
+		Envelope(int n)
+		{
+			_n = n;
+		}
+
+		@Override
+		public int sample(double[][] values, int variables, int steps, int[] rows, double[][] out)
+		{
+			if(_min.length != variables)
+			{
+				_min = new double[variables];
+				_max = new double[variables];
+				_minIndex = new int[variables];
+				_maxIndex = new int[variables];
+				Arrays.fill(_min, Double.NaN);
+				Arrays.fill(_max, Double.NaN);
+			}
+			int kept = 0;
+			for(int step = 0; step < steps; step++)
+			{
+				for(int v = 0; v < variables; v++)
+				{
+					double value = values[v][step];
+					if(Double.isNaN(value))
+					{
+						continue;
+					}
+					if(Double.isNaN(_min[v]) || value < _min[v])
+					{
+						_min[v] = value;
+						_minIndex[v] = _count;
+					}
+					if(Double.isNaN(_max[v]) || value > _max[v])
+					{
+						_max[v] = value;
+						_maxIndex[v] = _count;
+					}
+				}
+				if(++_count == _n)
+				{
+					_count = 0;
+					rows[kept] = step;
+					rows[kept + 1] = step;
+					for(int v = 0; v < variables; v++)
+					{
+						boolean minFirst = _minIndex[v] <= _maxIndex[v];
+						out[v][kept] = minFirst ? _min[v] : _max[v];
+						out[v][kept + 1] = minFirst ? _max[v] : _min[v];
+						_min[v] = Double.NaN;
+						_max[v] = Double.NaN;
+					}
+					kept += 2;
+				}
+			}
+			return kept;
+		}
+	}
+
+	/**
+	 * Keeps the first step and then only the steps where a variable moved away from its last kept value by more than a threshold
+	 */
+	static class ChangeThreshold extends LEMSSampler
+	{
+		private double _delta;
+		private double[] _last = new double[0];
+
+		ChangeThreshold(double delta)
+		{
+			_delta = delta;
+		}
+
+		@Override
+		public int sample(double[][] values, int variables, int steps, int[] rows, double[][] out)
+		{
+			if(_last.length != variables)
+			{
+				_last = new double[variables];
+				Arrays.fill(_last, Double.NaN);
+			}
+			int kept = 0;
+			for(int step = 0; step < steps; step++)
+			{
+				boolean keep = false;
+				for(int v = 0; v < variables && !keep; v++)
+				{
+					double value = values[v][step];
+					keep = !Double.isNaN(value) && (Double.isNaN(_last[v]) || Math.abs(value - _last[v]) > _delta);
+				}
+				if(keep)
+				{
+					rows[kept] = step;
+					for(int v = 0; v < variables; v++)
+					{
+						double value = values[v][step];
+						out[v][kept] = value;
+						if(!Double.isNaN(value))
+						{
+							_last[v] = value;
+						}
+					}
+					kept++;
+				}
+			}
+			return kept;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.core.common.GeppettoExecutionException;
+
+/**
+ * Decouples the integration from the update of the runtime tree. A simulation thread keeps producing batches of results into a bounded queue while the consumer applies them to the tree and
+ * notifies the listeners. When the queue is full the simulation thread waits, the bound limits how far the integration can run ahead of the consumer.
+ */
+public class LEMSSimulationPipeline
+{
+
+	/**
+	 * Produces the next batch of results, it's called on the simulation thread
+	 */
+	public interface IBatchProducer
+	{
+		/**
+		 * @param batch
+		 *            an empty buffer to fill
+		 * @return false if there is nothing left to simulate
+		 * @throws Exception
+		 */
+		boolean produce(LEMSResultsBuffer batch) throws Exception;
+	}
+
+	private static Log _logger = LogFactory.getLog(LEMSSimulationPipeline.class);
+
+	private IBatchProducer _producer;
+	private BlockingQueue<LEMSResultsBuffer> _batches;
+	private BlockingQueue<LEMSResultsBuffer> _freeBatches;
+	private LEMSResultsBuffer _recording;
+	private Thread _thread;
+	private volatile boolean _running = false;
+	private volatile boolean _finished = false;
+	private volatile Exception _error = null;
+
+	/**
+	 * @param producer
+	 * @param capacity
+	 *            the maximum number of batches waiting to be consumed
+	 * @param stepsPerBatch
+	 *            the number of timesteps expected in every batch
+	 */
+	public LEMSSimulationPipeline(IBatchProducer producer, int capacity, int stepsPerBatch)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException("The capacity of the pipeline has to be at least 1, found " + capacity);
+		}
+		_producer = producer;
+		_batches = new ArrayBlockingQueue<LEMSResultsBuffer>(capacity);
+		// the batches in the queue, one being produced and one being consumed
+		_freeBatches = new ArrayBlockingQueue<LEMSResultsBuffer>(capacity + 2);
+		for(int i = 0; i < capacity + 2; i++)
+		{
+			_freeBatches.add(new LEMSResultsBuffer(stepsPerBatch));
+		}
+		// every batch is recorded here first and then copied so that all the batches share the same layout
+		_recording = new LEMSResultsBuffer(stepsPerBatch);
+	}
+
+	/**
+	 * Starts the simulation thread
+	 */
+	public synchronized void start()
+	{
+		if(_thread != null)
+		{
+			return;
+		}
+		_running = true;
+		_thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				produce();
+			}
+		}, "jLEMS simulation");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	private void produce()
+	{
+		try
+		{
+			while(_running)
+			{
+				LEMSResultsBuffer batch = _freeBatches.take();
+				_recording.clear();
+				if(!_producer.produce(_recording))
+				{
+					break;
+				}
+				_recording.copyTo(batch);
+				_batches.put(batch);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			// stopped
+		}
+		catch(Exception e)
+		{
+			_logger.error("The jLEMS simulation thread failed", e);
+			_error = e;
+		}
+		finally
+		{
+			_finished = true;
+		}
+	}
+
+	/**
+	 * Waits for the next batch of results, the batch has to be released once consumed
+	 * 
+	 * @return the next batch or null if the simulation is over
+	 * @throws GeppettoExecutionException
+	 */
+	public LEMSResultsBuffer take() throws GeppettoExecutionException
+	{
+		try
+		{
+			while(true)
+			{
+				LEMSResultsBuffer batch = _batches.poll(100, TimeUnit.MILLISECONDS);
+				if(batch != null)
+				{
+					return batch;
+				}
+				if(_error != null)
+				{
+					throw new GeppettoExecutionException(_error);
+				}
+				if(_finished && _batches.isEmpty())
+				{
+					return null;
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new GeppettoExecutionException(e);
+		}
+	}
+
+	/**
+	 * @param batch
+	 *            a batch returned by take which is not needed anymore
+	 */
+	public void release(LEMSResultsBuffer batch)
+	{
+		_freeBatches.offer(batch);
+	}
+
+	/**
+	 * @return the number of batches produced and not consumed yet
+	 */
+	public int getQueuedBatches()
+	{
+		return _batches.size();
+	}
+
+	/**
+	 * Stops the simulation thread, the batches not consumed yet are discarded
+	 */
+	public synchronized void stop()
+	{
+		_running = false;
+		if(_thread != null)
+		{
+			_thread.interrupt();
+			try
+			{
+				_thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			_thread = null;
+		}
+		_batches.clear();
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.geppetto.core.model.runtime.ACompositeNode;
+import org.geppetto.core.model.runtime.ANode;
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
+import org.geppetto.core.model.runtime.VariableNode;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Creates the nodes of the simulation trees for the states found in the results. The states are grouped by simulation tree so that every tree is visited once for all of them, and the states whose
+ * nodes were already created are skipped so that a change to the watch list only costs as much as the states it adds.
+ */
+public class LEMSSimulationTreeBuilder
+{
+
+	private Set<IStateIdentifier> _builtStates = new HashSet<IStateIdentifier>();
+
+	/**
+	 * @param results
+	 * @param aspect
+	 * @param pathResolver
+	 * @param changeTracker
+	 *            where the simulation trees the states belong to and the nodes created are reported
+	 */
+	public void build(LEMSResultsBuffer results, AspectNode aspect, LEMSPathResolver pathResolver, LEMSChangeTracker changeTracker)
+	{
+		Map<AspectSubTreeNode, Map<String, IStateIdentifier>> newStates = new LinkedHashMap<AspectSubTreeNode, Map<String, IStateIdentifier>>();
+		AspectSubTreeNode aspectSimulationTree = aspect.getSubTree(AspectTreeType.SIMULATION_TREE);
+		for(IStateIdentifier state : results.getStates())
+		{
+			if(_builtStates.contains(state))
+			{
+				continue;
+			}
+			String statePath = state.getStatePath().replace("/", ".");
+			AspectSubTreeNode simulationTree = pathResolver.resolve(statePath, aspectSimulationTree);
+			if(simulationTree == null)
+			{
+				continue;
+			}
+			Map<String, IStateIdentifier> treeStates = newStates.get(simulationTree);
+			if(treeStates == null)
+			{
+				treeStates = new LinkedHashMap<String, IStateIdentifier>();
+				newStates.put(simulationTree, treeStates);
+			}
+			treeStates.put(pathResolver.getGeppettoPath(statePath, aspectSimulationTree), state);
+		}
+
+		Map<ACompositeNode, Map<String, ANode>> children = new IdentityHashMap<ACompositeNode, Map<String, ANode>>();
+		for(Map.Entry<AspectSubTreeNode, Map<String, IStateIdentifier>> entry : newStates.entrySet())
+		{
+			CreateLEMSSimulationTreeVisitor createLEMSSimulationTreeVisitor = new CreateLEMSSimulationTreeVisitor(results, entry.getKey(), entry.getValue(), children);
+			entry.getKey().apply(createLEMSSimulationTreeVisitor);
+			_builtStates.addAll(createLEMSSimulationTreeVisitor.createNodes());
+			changeTracker.treeChanged(entry.getKey());
+			for(VariableNode node : createLEMSSimulationTreeVisitor.getCreatedNodes())
+			{
+				changeTracker.nodeChanged(node, entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Forgets which states were built, to be called when the simulation trees are reset
+	 */
+	public void clear()
+	{
+		_builtStates.clear();
+	}
+}
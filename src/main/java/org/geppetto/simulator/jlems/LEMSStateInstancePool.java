@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+
+/**
+ * Keeps state instances built ahead of time for the LEMS documents being simulated, so that a restart doesn't wait for the build. jLEMS can't bring a state instance back to its initial state,
+ * every built model is therefore used once and the pool is refilled by a background thread after a restart. Building ahead of time doubles the builds of a document and keeps a full model in
+ * memory, the number of models built ahead is asked by the simulator for every document, see {@link JLEMSSimulatorService#PREBUILT_MODELS}.
+ * 
+ * The jLEMS API doesn't give access to the content of an ILEMSDocument, a session reloading a model parses a new document and can't match the models built for the previous one. Documents are
+ * therefore compared by identity and referenced weakly, the models of a document are dropped once it is collected, when the simulator releases it or when it is the least recently used of too
+ * many documents.
+ */
+public class LEMSStateInstancePool
+{
+
+	public static final int DEFAULT_MAXIMUM_DOCUMENTS = 8;
+
+	private static final LEMSStateInstancePool INSTANCE = new LEMSStateInstancePool(DEFAULT_MAXIMUM_DOCUMENTS);
+
+	private static Log _logger = LogFactory.getLog(LEMSStateInstancePool.class);
+
+	private int _maximumDocuments;
+	private ReferenceQueue<ILEMSDocument> _collected = new ReferenceQueue<ILEMSDocument>();
+	private Map<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	private ExecutorService _builder = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "jLEMS state instance pool");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * @param maximumDocuments
+	 *            the maximum number of documents with built models kept ready
+	 */
+	public LEMSStateInstancePool(int maximumDocuments)
+	{
+		if(maximumDocuments < 1)
+		{
+			throw new IllegalArgumentException("The pool needs room for at least one document, found " + maximumDocuments);
+		}
+		_maximumDocuments = maximumDocuments;
+	}
+
+	/**
+	 * @return the pool shared by the jLEMS simulators of the process
+	 */
+	public static LEMSStateInstancePool getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Takes a built model of the document, the model is built now if none is ready
+	 * 
+	 * @param document
+	 * @param ahead
+	 *            the number of models of the document to build again in the background, 0 when the document is not expected to be started again
+	 * @return state instances never simulated and their run configuration
+	 * @throws Exception
+	 */
+	public JLEMSSimulatorService.BuiltModel take(ILEMSDocument document, int ahead) throws Exception
+	{
+		JLEMSSimulatorService.BuiltModel model;
+		synchronized(this)
+		{
+			model = getEntry(document)._ready.pollFirst();
+		}
+		if(model == null)
+		{
+			model = build(document);
+		}
+		prepare(document, ahead);
+		return model;
+	}
+
+	/**
+	 * Builds in the background the models of the document missing to have the given number ready, to be called as soon as a document is known to be started again
+	 * 
+	 * @param document
+	 * @param ahead
+	 *            the number of models of the document kept ready, 0 to not build ahead of time
+	 */
+	public void prepare(ILEMSDocument document, int ahead)
+	{
+		if(ahead < 0)
+		{
+			throw new IllegalArgumentException("The number of models built ahead can't be negative, found " + ahead);
+		}
+		final Entry entry;
+		final WeakReference<ILEMSDocument> reference = new WeakReference<ILEMSDocument>(document);
+		synchronized(this)
+		{
+			entry = getEntry(document);
+			entry._ahead = ahead;
+			while(entry._ready.size() > ahead)
+			{
+				entry._ready.pollLast();
+			}
+			if(ahead == 0)
+			{
+				return;
+			}
+		}
+		_builder.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while(true)
+					{
+						ILEMSDocument document = reference.get();
+						if(document == null)
+						{
+							return;
+						}
+						synchronized(LEMSStateInstancePool.this)
+						{
+							if(entry._ready.size() >= entry._ahead)
+							{
+								return;
+							}
+						}
+						JLEMSSimulatorService.BuiltModel model = build(document);
+						synchronized(LEMSStateInstancePool.this)
+						{
+							if(entry._ready.size() >= entry._ahead)
+							{
+								// released or dropped while it was being built
+								return;
+							}
+							entry._ready.addLast(model);
+							evict();
+						}
+					}
+				}
+				catch(Exception e)
+				{
+					_logger.warn("Could not build the LEMS model ahead of time", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Drops the models built for a document which won't be simulated again
+	 * 
+	 * @param document
+	 */
+	public synchronized void release(ILEMSDocument document)
+	{
+		Entry entry = _entries.get(new Key(document, null));
+		if(entry != null)
+		{
+			entry.drop();
+		}
+	}
+
+	/**
+	 * @param document
+	 * @return the model built
+	 * @throws Exception
+	 */
+	protected JLEMSSimulatorService.BuiltModel build(ILEMSDocument document) throws Exception
+	{
+		Object lock;
+		synchronized(this)
+		{
+			lock = getEntry(document)._lock;
+		}
+		// jLEMS resolves the document while building it, builds of the same document are not run concurrently
+		synchronized(lock)
+		{
+			return JLEMSSimulatorService.build(document);
+		}
+	}
+
+	/**
+	 * @param document
+	 * @return the number of built models ready for the document
+	 */
+	public synchronized int getAvailable(ILEMSDocument document)
+	{
+		Entry entry = _entries.get(new Key(document, null));
+		return entry == null ? 0 : entry._ready.size();
+	}
+
+	/**
+	 * @return the number of documents the pool refers to, the documents collected are not counted
+	 */
+	public synchronized int getDocuments()
+	{
+		purge();
+		return _entries.size();
+	}
+
+	/**
+	 * Drops every built model
+	 */
+	public synchronized void clear()
+	{
+		for(Entry entry : _entries.values())
+		{
+			entry.drop();
+		}
+	}
+
+	/**
+	 * @param document
+	 * @return the entry of the document, created if the pool doesn't refer to it yet
+	 */
+	private Entry getEntry(ILEMSDocument document)
+	{
+		purge();
+		Entry entry = _entries.get(new Key(document, null));
+		if(entry == null)
+		{
+			entry = new Entry();
+			_entries.put(new Key(document, _collected), entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Drops the models of the least recently used documents beyond the maximum number of documents with models ready
+	 */
+	private void evict()
+	{
+		int withModels = 0;
+		for(Entry entry : _entries.values())
+		{
+			if(!entry._ready.isEmpty())
+			{
+				withModels++;
+			}
+		}
+		for(Entry entry : _entries.values())
+		{
+			if(withModels <= _maximumDocuments)
+			{
+				return;
+			}
+			if(!entry._ready.isEmpty())
+			{
+				entry.drop();
+				withModels--;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries of the documents which were garbage collected
+	 */
+	private void purge()
+	{
+		Reference<? extends ILEMSDocument> collected;
+		while((collected = _collected.poll()) != null)
+		{
+			_entries.remove(collected);
+		}
+	}
+
+	/**
+	 * The models built ahead of time for a document. The entry holds the lock of the builds of the document, it is kept as long as the document so that a build in progress and a new one never
+	 * run concurrently.
+	 */
+	private static class Entry
+	{
+		private final Object _lock = new Object();
+		private Deque<JLEMSSimulatorService.BuiltModel> _ready = new ArrayDeque<JLEMSSimulatorService.BuiltModel>();
+		private int _ahead = 0;
+
+		void drop()
+		{
+			_ready.clear();
+			_ahead = 0;
+		}
+	}
+
+	/**
+	 * A weak reference to a document compared by identity. Once the document is collected the key is only equal to itself.
+	 */
+	private static class Key extends WeakReference<ILEMSDocument>
+	{
+		private int _hash;
+
+		Key(ILEMSDocument document, ReferenceQueue<ILEMSDocument> queue)
+		{
+			super(document, queue);
+			_hash = System.identityHashCode(document);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(obj == this)
+			{
+				return true;
+			}
+			if(!(obj instanceof Key))
+			{
+				return false;
+			}
+			ILEMSDocument document = get();
+			return document != null && document == ((Key) obj).get();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hash;
+		}
+	}
+}
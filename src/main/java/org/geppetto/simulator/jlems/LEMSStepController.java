@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * Chooses how many jLEMS timesteps are advanced for every call to simulate. After every batch the largest excursion of every recorded state from its value at the start of the batch is compared
+ * with the tolerance, relative to the largest magnitude seen for the state. The batches grow while the states barely move and shrink around fast dynamics such as spikes, so that a quiescent
+ * stretch costs a single update of the runtime tree.
+ * 
+ * jLEMS integrates with the fixed timestep of the run configuration and a batch can't be taken back, the error is therefore controlled on the next batch rather than by rejecting the last one.
+ */
+public class LEMSStepController
+{
+
+	private static final double SAFETY = 0.9;
+
+	private static final double MAX_GROWTH = 2;
+
+	private static final double MAX_SHRINK = 0.25;
+
+	private double _tolerance;
+	private int _maxSteps;
+	private int _steps;
+	private double _error = 0;
+	// the value at the end of the last batch and the largest magnitude seen, for every state
+	private Map<IStateIdentifier, double[]> _history = new HashMap<IStateIdentifier, double[]>();
+
+	/**
+	 * @param tolerance
+	 *            the largest change of a state accepted within a batch, relative to the largest magnitude of the state
+	 * @param initialSteps
+	 *            the number of timesteps of the first batch
+	 * @param maxSteps
+	 *            the maximum number of timesteps of a batch
+	 */
+	public LEMSStepController(double tolerance, int initialSteps, int maxSteps)
+	{
+		if(tolerance <= 0)
+		{
+			throw new IllegalArgumentException("The tolerance must be positive: " + tolerance);
+		}
+		_tolerance = tolerance;
+		_maxSteps = Math.max(1, maxSteps);
+		_steps = Math.max(1, Math.min(initialSteps, _maxSteps));
+	}
+
+	/**
+	 * @return the number of timesteps to advance in the next batch
+	 */
+	public int getSteps()
+	{
+		return _steps;
+	}
+
+	/**
+	 * @return the error of the last batch, 1 when the largest change matched the tolerance
+	 */
+	public double getError()
+	{
+		return _error;
+	}
+
+	/**
+	 * Measures the error of a batch and chooses the size of the next one
+	 * 
+	 * @param results
+	 *            the results of the batch just advanced
+	 * @return the number of timesteps to advance in the next batch
+	 */
+	public int update(LEMSResultsBuffer results)
+	{
+		int steps = results.getSteps();
+		if(steps == 0)
+		{
+			return _steps;
+		}
+		double error = 0;
+		List<IStateIdentifier> states = results.getStates();
+		for(int i = 0; i < states.size(); i++)
+		{
+			double[] values = results.getValues(i);
+			double[] history = _history.get(states.get(i));
+			if(history == null)
+			{
+				history = new double[] { values[0], 0 };
+				_history.put(states.get(i), history);
+			}
+			double start = history[0];
+			double scale = history[1];
+			double excursion = 0;
+			for(int step = 0; step < steps; step++)
+			{
+				double value = values[step];
+				if(Double.isNaN(value))
+				{
+					continue;
+				}
+				excursion = Math.max(excursion, Math.abs(value - start));
+				scale = Math.max(scale, Math.abs(value));
+			}
+			if(!Double.isNaN(values[steps - 1]))
+			{
+				history[0] = values[steps - 1];
+			}
+			history[1] = scale;
+			if(scale > 0)
+			{
+				error = Math.max(error, excursion / (_tolerance * scale));
+			}
+		}
+		_error = error;
+
+		// the excursion grows about linearly with the number of steps
+		double factor = error == 0 ? MAX_GROWTH : Math.max(MAX_SHRINK, Math.min(MAX_GROWTH, SAFETY / error));
+		_steps = (int) Math.max(1, Math.min(_maxSteps, Math.round(steps * factor)));
+		return _steps;
+	}
+
+	/**
+	 * Forgets the values seen, the size of the next batch is kept
+	 */
+	public void clear()
+	{
+		_history.clear();
+		_error = 0;
+	}
+}
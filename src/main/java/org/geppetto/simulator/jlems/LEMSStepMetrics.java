@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Timers of the phases of a step of the jLEMS simulator and counters of what they did. Durations go into histograms with power of two buckets made of atomic counters, recording never locks and
+ * costs a few atomic increments. Metrics can be chained to a parent which receives everything recorded, the process wide metrics returned by {@link #getGlobal()} aggregate every simulator and
+ * are registered as a JMX MBean.
+ */
+public class LEMSStepMetrics implements LEMSStepMetricsMBean
+{
+
+	/**
+	 * The phases of a step
+	 */
+	public enum Phase
+	{
+		/** jLEMS advancing the state instances and the results being recorded */
+		ADVANCE,
+		/** the results being streamed to the results file */
+		STREAM,
+		/** the watched variables or the simulation tree being updated */
+		TREE_UPDATE,
+		/** the modified flags being propagated up the runtime tree */
+		PROPAGATE,
+		/** the listeners being notified */
+		NOTIFY
+	}
+
+	private static final String OBJECT_NAME = "org.geppetto.simulator.jlems:type=LEMSStepMetrics";
+
+	private static Log _logger = LogFactory.getLog(LEMSStepMetrics.class);
+
+	private static LEMSStepMetrics _global = null;
+
+	private LEMSStepMetrics _parent;
+	private Map<Phase, Timer> _timers = new EnumMap<Phase, Timer>(Phase.class);
+	private AtomicLong _steps = new AtomicLong();
+	private AtomicLong _statesRecorded = new AtomicLong();
+	private AtomicLong _quantitiesAllocated = new AtomicLong();
+
+	/**
+	 * @param parent
+	 *            the metrics which receive everything recorded in these ones, can be null
+	 */
+	public LEMSStepMetrics(LEMSStepMetrics parent)
+	{
+		_parent = parent;
+		for(Phase phase : Phase.values())
+		{
+			_timers.put(phase, new Timer());
+		}
+	}
+
+	/**
+	 * @return the metrics of every jLEMS simulator of the process, registered as an MBean the first time they are requested
+	 */
+	public static synchronized LEMSStepMetrics getGlobal()
+	{
+		if(_global == null)
+		{
+			_global = new LEMSStepMetrics(null);
+			try
+			{
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if(!server.isRegistered(name))
+				{
+					server.registerMBean(_global, name);
+				}
+			}
+			catch(JMException e)
+			{
+				_logger.warn("Could not register the jLEMS step metrics MBean", e);
+			}
+		}
+		return _global;
+	}
+
+	/**
+	 * @param phase
+	 * @param nanos
+	 *            the duration of the phase in nanoseconds
+	 */
+	public void record(Phase phase, long nanos)
+	{
+		_timers.get(phase).record(nanos);
+		if(_parent != null)
+		{
+			_parent.record(phase, nanos);
+		}
+	}
+
+	/**
+	 * @param steps
+	 *            the number of timesteps advanced
+	 * @param statesRecorded
+	 *            the number of samples recorded from jLEMS
+	 */
+	public void stepped(int steps, long statesRecorded)
+	{
+		_steps.addAndGet(steps);
+		_statesRecorded.addAndGet(statesRecorded);
+		if(_parent != null)
+		{
+			_parent.stepped(steps, statesRecorded);
+		}
+	}
+
+	/**
+	 * @param quantities
+	 *            the number of quantities added to the runtime tree
+	 */
+	public void quantitiesAllocated(long quantities)
+	{
+		_quantitiesAllocated.addAndGet(quantities);
+		if(_parent != null)
+		{
+			_parent.quantitiesAllocated(quantities);
+		}
+	}
+
+	@Override
+	public long getSteps()
+	{
+		return _steps.get();
+	}
+
+	@Override
+	public long getStatesRecorded()
+	{
+		return _statesRecorded.get();
+	}
+
+	@Override
+	public long getQuantitiesAllocated()
+	{
+		return _quantitiesAllocated.get();
+	}
+
+	@Override
+	public long getCount(String phase)
+	{
+		return getTimer(phase)._count.get();
+	}
+
+	@Override
+	public double getMeanMillis(String phase)
+	{
+		Timer timer = getTimer(phase);
+		long count = timer._count.get();
+		return count == 0 ? 0 : timer._total.get() / (double) count / 1e6;
+	}
+
+	@Override
+	public double getPercentileMillis(String phase, double percentile)
+	{
+		return getTimer(phase).percentile(percentile) / 1e6;
+	}
+
+	@Override
+	public double getMaxMillis(String phase)
+	{
+		return getTimer(phase)._max.get() / 1e6;
+	}
+
+	@Override
+	public String getSummary()
+	{
+		StringBuilder summary = new StringBuilder();
+		summary.append(getSteps()).append(" steps, ").append(getStatesRecorded()).append(" states recorded, ").append(getQuantitiesAllocated()).append(" quantities allocated");
+		for(Phase phase : Phase.values())
+		{
+			String name = phase.name();
+			summary.append(String.format(Locale.ENGLISH, "%n%-12s count %d mean %.3fms p99 %.3fms max %.3fms", name, getCount(name), getMeanMillis(name), getPercentileMillis(name, 99),
+					getMaxMillis(name)));
+		}
+		return summary.toString();
+	}
+
+	@Override
+	public void reset()
+	{
+		for(Timer timer : _timers.values())
+		{
+			timer.reset();
+		}
+		_steps.set(0);
+		_statesRecorded.set(0);
+		_quantitiesAllocated.set(0);
+	}
+
+	/**
+	 * @param phase
+	 * @return the timer of the phase
+	 */
+	private Timer getTimer(String phase)
+	{
+		return _timers.get(Phase.valueOf(phase.toUpperCase(Locale.ENGLISH)));
+	}
+
+	/**
+	 * A histogram of durations in nanoseconds, bucket i counts the durations between 2^i and 2^(i+1)
+	 */
+	private static class Timer
+	{
+		private AtomicLongArray _buckets = new AtomicLongArray(64);
+		private AtomicLong _count = new AtomicLong();
+		private AtomicLong _total = new AtomicLong();
+		private AtomicLong _max = new AtomicLong();
+
+		void record(long nanos)
+		{
+			nanos = Math.max(nanos, 1);
+			_buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos));
+			_count.incrementAndGet();
+			_total.addAndGet(nanos);
+			long max = _max.get();
+			while(nanos > max && !_max.compareAndSet(max, nanos))
+			{
+				max = _max.get();
+			}
+		}
+
+		/**
+		 * @param percentile
+		 * @return the upper bound of the bucket containing the percentile, capped to the maximum
+		 */
+		long percentile(double percentile)
+		{
+			long count = _count.get();
+			if(count == 0)
+			{
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for(int i = 0; i < 64; i++)
+			{
+				seen += _buckets.get(i);
+				if(seen >= rank)
+				{
+					return i >= 62 ? _max.get() : Math.min((1L << (i + 1)) - 1, _max.get());
+				}
+			}
+			return _max.get();
+		}
+
+		void reset()
+		{
+			for(int i = 0; i < 64; i++)
+			{
+				_buckets.set(i, 0);
+			}
+			_count.set(0);
+			_total.set(0);
+			_max.set(0);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+/**
+ * The management interface of {@link LEMSStepMetrics}, the phases are the names of {@link LEMSStepMetrics.Phase}
+ */
+public interface LEMSStepMetricsMBean
+{
+
+	/**
+	 * @return the number of timesteps advanced
+	 */
+	long getSteps();
+
+	/**
+	 * @return the number of samples recorded from jLEMS
+	 */
+	long getStatesRecorded();
+
+	/**
+	 * @return the number of quantities added to the runtime tree
+	 */
+	long getQuantitiesAllocated();
+
+	/**
+	 * @return one line per phase with its count, mean, 99th percentile and maximum
+	 */
+	String getSummary();
+
+	/**
+	 * @param phase
+	 * @return the number of times the phase was timed
+	 */
+	long getCount(String phase);
+
+	/**
+	 * @param phase
+	 * @return the mean duration of the phase in milliseconds
+	 */
+	double getMeanMillis(String phase);
+
+	/**
+	 * @param phase
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return an upper bound of the percentile of the durations of the phase in milliseconds
+	 */
+	double getPercentileMillis(String phase, double percentile);
+
+	/**
+	 * @param phase
+	 * @return the longest duration of the phase in milliseconds
+	 */
+	double getMaxMillis(String phase);
+
+	/**
+	 * Sets every timer and counter back to zero
+	 */
+	void reset();
+}
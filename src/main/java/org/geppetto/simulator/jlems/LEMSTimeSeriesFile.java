@@ -0,0 +1,522 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A memory mapped file containing time series of doubles, one column per recorded state. Rows can only be appended and can be read back in any order by their time index.
+ * 
+ * The file is a sequence of segments, a new segment is started every time the recorded states change. A segment starts with a header containing its column names and the number of rows written,
+ * its rows follow in chunks. Inside a chunk the values of a column are contiguous so that reading a column touches as few pages as possible. The region mapped for writing doubles every time it is
+ * filled, up to MAX_WRITE_REGION bytes, and only the last chunk read is mapped besides it, the heap used doesn't depend on the length of the simulation.
+ */
+public class LEMSTimeSeriesFile implements Closeable
+{
+
+	private static final int MAGIC = 0x4C454D53;
+	private static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	// magic, version, segments, padding
+	private static final int FILE_HEADER_SIZE = 16;
+	private static final int SEGMENTS_OFFSET = 8;
+	// chunk rows, columns, rows
+	private static final int SEGMENT_FIXED_SIZE = 16;
+	private static final int SEGMENT_ROWS_OFFSET = 8;
+	private static final long MAX_WRITE_REGION = 64L * 1024 * 1024;
+
+	private RandomAccessFile _file;
+	private FileChannel _channel;
+	private MappedByteBuffer _header;
+	private List<Segment> _segments = new ArrayList<Segment>();
+	private Segment _segment;
+	private MappedByteBuffer _segmentHeader;
+	private long _rows;
+
+	private long _writeRegionStart = -1;
+	private long _writeRegionChunks = 0;
+	private MappedByteBuffer _writeBuffer;
+	private Segment _readSegment;
+	private long _readChunk = -1;
+	private MappedByteBuffer _readBuffer;
+
+	/**
+	 * The rows written with the same columns
+	 */
+	private static class Segment
+	{
+		private long _offset;
+		private List<String> _columns;
+		private int _chunkRows;
+		private long _chunkSize;
+		private long _dataOffset;
+		private long _firstRow;
+		private long _rows;
+
+		Segment(long offset, List<String> columns, int chunkRows, long dataOffset, long firstRow, long rows)
+		{
+			_offset = offset;
+			_columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+			_chunkRows = chunkRows;
+			_chunkSize = (long) chunkRows * columns.size() * 8;
+			if(_chunkSize > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("A chunk of " + chunkRows + " rows and " + columns.size() + " columns is too large to be mapped");
+			}
+			_dataOffset = dataOffset;
+			_firstRow = firstRow;
+			_rows = rows;
+		}
+
+		/**
+		 * @return the offset following the last chunk of the segment
+		 */
+		long getEnd()
+		{
+			return _dataOffset + (_rows + _chunkRows - 1) / _chunkRows * _chunkSize;
+		}
+
+		/**
+		 * @param row
+		 *            the index of the row in the segment
+		 * @param column
+		 * @return the offset of the value from the start of its chunk
+		 */
+		int getPosition(long row, int column)
+		{
+			return (column * _chunkRows + (int) (row % _chunkRows)) * 8;
+		}
+	}
+
+	private LEMSTimeSeriesFile(RandomAccessFile file) throws IOException
+	{
+		_file = file;
+		_channel = file.getChannel();
+		_header = _channel.map(MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+	}
+
+	/**
+	 * Creates a new file, an existing file is overwritten
+	 * 
+	 * @param file
+	 * @param columns
+	 *            the names of the columns of the first segment
+	 * @param chunkRows
+	 *            the number of rows of a chunk
+	 * @return
+	 * @throws IOException
+	 */
+	public static LEMSTimeSeriesFile create(File file, List<String> columns, int chunkRows) throws IOException
+	{
+		if(chunkRows < 1)
+		{
+			throw new IllegalArgumentException("The number of rows per chunk has to be at least 1, found " + chunkRows);
+		}
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try
+		{
+			randomAccessFile.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(0);
+			header.rewind();
+			randomAccessFile.getChannel().write(header, 0);
+			LEMSTimeSeriesFile timeSeries = new LEMSTimeSeriesFile(randomAccessFile);
+			timeSeries.writeSegment(FILE_HEADER_SIZE, columns, chunkRows);
+			return timeSeries;
+		}
+		catch(IOException e)
+		{
+			randomAccessFile.close();
+			throw e;
+		}
+		catch(RuntimeException e)
+		{
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing file, new rows can be appended to its last segment
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static LEMSTimeSeriesFile open(File file) throws IOException
+	{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = randomAccessFile.getChannel();
+			ByteBuffer fixed = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			channel.read(fixed, 0);
+			fixed.flip();
+			if(fixed.remaining() < fixed.capacity() || fixed.getInt() != MAGIC)
+			{
+				throw new IOException(file + " is not a LEMS time series file");
+			}
+			int version = fixed.getInt();
+			if(version != VERSION)
+			{
+				throw new IOException("Unsupported version " + version + " of " + file);
+			}
+			int segmentCount = fixed.getInt();
+			if(segmentCount < 1)
+			{
+				throw new IOException(file + " has no segment");
+			}
+
+			LEMSTimeSeriesFile timeSeries = new LEMSTimeSeriesFile(randomAccessFile);
+			long offset = FILE_HEADER_SIZE;
+			ByteBuffer segmentFixed = ByteBuffer.allocate(SEGMENT_FIXED_SIZE);
+			ByteBuffer length = ByteBuffer.allocate(4);
+			for(int i = 0; i < segmentCount; i++)
+			{
+				segmentFixed.clear();
+				channel.read(segmentFixed, offset);
+				segmentFixed.flip();
+				int chunkRows = segmentFixed.getInt();
+				int columnCount = segmentFixed.getInt();
+				long rows = segmentFixed.getLong();
+				List<String> columns = new ArrayList<String>();
+				long position = offset + SEGMENT_FIXED_SIZE;
+				for(int column = 0; column < columnCount; column++)
+				{
+					length.clear();
+					channel.read(length, position);
+					length.flip();
+					byte[] name = new byte[length.getInt()];
+					channel.read(ByteBuffer.wrap(name), position + 4);
+					columns.add(new String(name, UTF8));
+					position += 4 + name.length;
+				}
+				Segment segment = new Segment(offset, columns, chunkRows, (position + 7) & ~7L, timeSeries._rows, rows);
+				timeSeries._segments.add(segment);
+				timeSeries._rows += rows;
+				offset = segment.getEnd();
+			}
+			timeSeries._segment = timeSeries._segments.get(segmentCount - 1);
+			timeSeries._segmentHeader = channel.map(MapMode.READ_WRITE, timeSeries._segment._offset, SEGMENT_FIXED_SIZE);
+			return timeSeries;
+		}
+		catch(IOException e)
+		{
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a new segment, the next rows have the given columns. The current segment is replaced if it has no row.
+	 * 
+	 * @param columns
+	 *            the names of the columns
+	 * @throws IOException
+	 */
+	public void startSegment(List<String> columns) throws IOException
+	{
+		if(_segment._rows == 0)
+		{
+			_segments.remove(_segments.size() - 1);
+			_header.putInt(SEGMENTS_OFFSET, _segments.size());
+			writeSegment(_segment._offset, columns, _segment._chunkRows);
+		}
+		else
+		{
+			writeSegment(_segment.getEnd(), columns, _segment._chunkRows);
+		}
+	}
+
+	/**
+	 * Writes the header of a new segment and makes it the one rows are appended to
+	 * 
+	 * @param offset
+	 * @param columns
+	 * @param chunkRows
+	 * @throws IOException
+	 */
+	private void writeSegment(long offset, List<String> columns, int chunkRows) throws IOException
+	{
+		if(columns.isEmpty())
+		{
+			throw new IllegalArgumentException("A time series file needs at least one column");
+		}
+		int headerSize = SEGMENT_FIXED_SIZE;
+		List<byte[]> names = new ArrayList<byte[]>();
+		for(String column : columns)
+		{
+			byte[] name = column.getBytes(UTF8);
+			names.add(name);
+			headerSize += 4 + name.length;
+		}
+		// data is aligned to 8 bytes
+		long dataOffset = (offset + headerSize + 7) & ~7L;
+		Segment segment = new Segment(offset, columns, chunkRows, dataOffset, _rows, 0);
+
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(chunkRows);
+		header.putInt(columns.size());
+		header.putLong(0);
+		for(byte[] name : names)
+		{
+			header.putInt(name.length);
+			header.put(name);
+		}
+		header.rewind();
+		if(_writeBuffer != null)
+		{
+			_writeBuffer.force();
+		}
+		_channel.write(header, offset);
+		_segments.add(segment);
+		_header.putInt(SEGMENTS_OFFSET, _segments.size());
+		_segment = segment;
+		_segmentHeader = _channel.map(MapMode.READ_WRITE, offset, SEGMENT_FIXED_SIZE);
+		_writeBuffer = null;
+		_writeRegionStart = -1;
+		_writeRegionChunks = 0;
+	}
+
+	/**
+	 * @param row
+	 *            one value per column of the current segment
+	 * @throws IOException
+	 */
+	public void append(double[] row) throws IOException
+	{
+		Segment segment = _segment;
+		if(row.length != segment._columns.size())
+		{
+			throw new IllegalArgumentException("Expected " + segment._columns.size() + " values, found " + row.length);
+		}
+		long chunk = segment._rows / segment._chunkRows;
+		if(_writeBuffer == null || chunk >= _writeRegionStart + _writeRegionChunks)
+		{
+			// the region mapped doubles every time it is filled
+			long chunks = Math.max(1, Math.min(_writeRegionChunks * 2, MAX_WRITE_REGION / segment._chunkSize));
+			if(_writeBuffer != null)
+			{
+				_writeBuffer.force();
+			}
+			_writeBuffer = _channel.map(MapMode.READ_WRITE, segment._dataOffset + chunk * segment._chunkSize, chunks * segment._chunkSize);
+			_writeRegionStart = chunk;
+			_writeRegionChunks = chunks;
+		}
+		int base = (int) ((chunk - _writeRegionStart) * segment._chunkSize);
+		for(int column = 0; column < row.length; column++)
+		{
+			_writeBuffer.putDouble(base + segment.getPosition(segment._rows, column), row[column]);
+		}
+		segment._rows++;
+		_rows++;
+		_segmentHeader.putLong(SEGMENT_ROWS_OFFSET, segment._rows);
+	}
+
+	/**
+	 * @param row
+	 *            the time index
+	 * @param column
+	 *            the index of the column in the segment of the row
+	 * @return
+	 * @throws IOException
+	 */
+	public double read(long row, int column) throws IOException
+	{
+		Segment segment = _segments.get(getSegment(row));
+		return readValue(segment, row - segment._firstRow, column);
+	}
+
+	/**
+	 * @param column
+	 *            the index of the column in the segment of the first row
+	 * @param fromRow
+	 *            the first time index
+	 * @param values
+	 *            filled with consecutive values of the column
+	 * @return the number of values read, less than the size of the array if the end of the segment is reached
+	 * @throws IOException
+	 */
+	public int readColumn(int column, long fromRow, double[] values) throws IOException
+	{
+		Segment segment = _segments.get(getSegment(fromRow));
+		long first = fromRow - segment._firstRow;
+		int count = (int) Math.min(values.length, segment._rows - first);
+		for(int i = 0; i < count; i++)
+		{
+			values[i] = readValue(segment, first + i, column);
+		}
+		return count;
+	}
+
+	/**
+	 * @param segment
+	 * @param row
+	 *            the index of the row in the segment
+	 * @param column
+	 * @return
+	 * @throws IOException
+	 */
+	private double readValue(Segment segment, long row, int column) throws IOException
+	{
+		if(column < 0 || column >= segment._columns.size())
+		{
+			throw new IndexOutOfBoundsException("Column " + column + " out of " + segment._columns.size() + " columns");
+		}
+		long chunk = row / segment._chunkRows;
+		if(segment == _segment && _writeBuffer != null && chunk >= _writeRegionStart && chunk < _writeRegionStart + _writeRegionChunks)
+		{
+			return _writeBuffer.getDouble((int) ((chunk - _writeRegionStart) * segment._chunkSize) + segment.getPosition(row, column));
+		}
+		if(segment != _readSegment || chunk != _readChunk)
+		{
+			_readBuffer = _channel.map(MapMode.READ_WRITE, segment._dataOffset + chunk * segment._chunkSize, segment._chunkSize);
+			_readSegment = segment;
+			_readChunk = chunk;
+		}
+		return _readBuffer.getDouble(segment.getPosition(row, column));
+	}
+
+	/**
+	 * @param row
+	 *            the time index
+	 * @return the index of the segment containing the row
+	 */
+	public int getSegment(long row)
+	{
+		if(row < 0 || row >= _rows)
+		{
+			throw new IndexOutOfBoundsException("Row " + row + " out of " + _rows + " rows");
+		}
+		int low = 0;
+		int high = _segments.size() - 1;
+		while(low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if(_segments.get(middle)._firstRow <= row)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the number of segments
+	 */
+	public int getSegments()
+	{
+		return _segments.size();
+	}
+
+	/**
+	 * @param segment
+	 * @return the time index of the first row of the segment
+	 */
+	public long getFirstRow(int segment)
+	{
+		return _segments.get(segment)._firstRow;
+	}
+
+	/**
+	 * @param segment
+	 * @return the names of the columns of the segment
+	 */
+	public List<String> getColumns(int segment)
+	{
+		return _segments.get(segment)._columns;
+	}
+
+	/**
+	 * @return the number of rows written
+	 */
+	public long getRows()
+	{
+		return _rows;
+	}
+
+	/**
+	 * @return the names of the columns of the segment rows are appended to
+	 */
+	public List<String> getColumns()
+	{
+		return _segment._columns;
+	}
+
+	/**
+	 * @param name
+	 * @return the index of the column in the segment rows are appended to or -1 if there is no such column
+	 */
+	public int getColumn(String name)
+	{
+		return _segment._columns.indexOf(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(_writeBuffer != null)
+		{
+			_writeBuffer.force();
+		}
+		_segmentHeader.force();
+		_header.force();
+		_writeBuffer = null;
+		_readBuffer = null;
+		_segmentHeader = null;
+		_header = null;
+		_file.close();
+	}
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+/**
+ * The units of the LEMS dimensions. A dimension is a comma-separated list of dimension powers in the order mass, length, time, current, temperature, amount and brightness, its unit and scaling
+ * factor are computed the first time it is seen and then shared by every simulator of the process.
+ */
+public final class LEMSUnits
+{
+
+	private static final Unit<?>[] BASE_UNITS = { SI.GRAM, SI.METER, SI.SECOND, SI.AMPERE, SI.CELSIUS, SI.MOLE, SI.CANDELA };
+
+	private static ConcurrentMap<String, Entry> _entries = new ConcurrentHashMap<String, Entry>();
+
+	private LEMSUnits()
+	{
+	}
+
+	/**
+	 * @param dimension
+	 * @return the unit of the dimension
+	 */
+	public static Unit<? extends Quantity> getUnit(String dimension)
+	{
+		return getEntry(dimension)._unit;
+	}
+
+	/**
+	 * @param dimension
+	 * @return the factor converting the unit of the dimension to its standard unit, formatted for the runtime tree
+	 */
+	public static String getScalingFactor(String dimension)
+	{
+		return getEntry(dimension)._scalingFactor;
+	}
+
+	/**
+	 * @return the number of dimensions seen so far
+	 */
+	public static int size()
+	{
+		return _entries.size();
+	}
+
+	/**
+	 * @param dimension
+	 * @return the cached unit of the dimension, computed if it wasn't seen yet
+	 */
+	private static Entry getEntry(String dimension)
+	{
+		Entry entry = _entries.get(dimension);
+		if(entry == null)
+		{
+			Entry computed = new Entry(computeUnit(dimension));
+			entry = _entries.putIfAbsent(dimension, computed);
+			if(entry == null)
+			{
+				entry = computed;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * @param dimension
+	 * @return the product of the base units scaled by the powers of the dimension
+	 */
+	private static Unit<? extends Quantity> computeUnit(String dimension)
+	{
+		StringTokenizer st = new StringTokenizer(dimension, ",");
+		Unit<? extends Quantity> resultingUnit = Unit.ONE;
+		for(Unit<?> baseUnit : BASE_UNITS)
+		{
+			float scaling = getDecimalNumber(Integer.parseInt(st.nextToken()));
+			if(scaling != 0)
+			{
+				resultingUnit = resultingUnit.times(getUnit(scaling, baseUnit));
+			}
+		}
+		return resultingUnit;
+	}
+
+	/**
+	 * @param scaling
+	 * @param unit
+	 * @return
+	 */
+	private static Unit<?> getUnit(Float scaling, Unit<?> unit)
+	{
+		switch(scaling.intValue())
+		{
+			case -12:
+				return SI.PICO(unit);
+			case -9:
+				return SI.NANO(unit);
+			case -6:
+				return SI.MICRO(unit);
+			case -3:
+				return SI.MILLI(unit);
+			case -2:
+				return SI.CENTI(unit);
+			case -1:
+				return SI.DECI(unit);
+			case 12:
+				return SI.TERA(unit);
+			case 6:
+				return SI.MEGA(unit);
+			case 3:
+				return SI.KILO(unit);
+			case 2:
+				return SI.HECTO(unit);
+			case 1:
+				return unit;
+			default:
+				return unit.times(scaling);
+		}
+	}
+
+	/**
+	 * @param noZeros
+	 * @return
+	 */
+	private static float getDecimalNumber(int noZeros)
+	{
+		if(noZeros > 0)
+		{
+			char[] zeros = {};
+			if(noZeros > 1)
+			{
+				zeros = new char[noZeros];
+			}
+			Arrays.fill(zeros, '0');
+			return Float.parseFloat("1" + String.valueOf(zeros));
+		}
+		else if(noZeros < 0)
+		{
+			char[] zeros = new char[Math.abs(noZeros + 1)];
+			Arrays.fill(zeros, '0');
+			return Float.parseFloat("0." + String.valueOf(zeros) + "1");
+		}
+		else
+		{
+			return 0f;
+		}
+	}
+
+	/**
+	 * A unit with its scaling factor
+	 */
+	private static class Entry
+	{
+		private Unit<? extends Quantity> _unit;
+		private String _scalingFactor;
+
+		Entry(Unit<? extends Quantity> unit)
+		{
+			_unit = unit;
+			// DecimalFormat isn't thread safe, a new one is cheap compared to computing the unit
+			_scalingFactor = new DecimalFormat("0.E0").format(getConverterToStandard(unit).convert(1));
+		}
+
+		private static <Q extends Quantity> UnitConverter getConverterToStandard(Unit<Q> unit)
+		{
+			return unit.getConverterTo(unit.getStandardUnit());
+		}
+	}
+}
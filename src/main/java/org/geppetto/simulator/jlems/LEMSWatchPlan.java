@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.core.model.quantities.Quantity;
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.VariableNode;
+import org.geppetto.core.model.values.DoubleValue;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * A flat list of the watched variables of an aspect together with the LEMS state they show. The plan is compiled once every time the watch list changes, the update done at every step only loops
+ * over the watched variables so that its cost doesn't depend on the size of the tree. When a recording store is given every sample is appended to it. The tree is fed with rows: a row holds a
+ * value for every watched variable and is shown at the time of one step, the caller advances the time node once for every row so that the time and the variables stay in step. By default every
+ * step of a batch is a row, the tree can instead be fed with the last step of every batch only or with the steps chosen by a sampler.
+ */
+public class LEMSWatchPlan
+{
+
+	private VariableNode[] _nodes;
+	private IStateIdentifier[] _states;
+	private int[] _trees;
+	private AspectSubTreeNode[] _simulationTrees;
+	private DoubleRingBuffer[] _recordings;
+	private LEMSSampler _sampler = null;
+	private boolean _feedAllSamples = true;
+	private double[][] _values = new double[0][];
+	private double[][] _sampled = new double[0][];
+	private int[] _rows = new int[0];
+	private double[] _rowTimes = new double[0];
+	private int _rowCount = 0;
+
+	private int[] _columns;
+	private Object _layout = null;
+	private int _layoutVersion = -1;
+
+	private List<VariableNode> _pendingNodes = new ArrayList<VariableNode>();
+	private List<IStateIdentifier> _pendingStates = new ArrayList<IStateIdentifier>();
+	private List<Integer> _pendingTrees = new ArrayList<Integer>();
+	private List<AspectSubTreeNode> _pendingSimulationTrees = new ArrayList<AspectSubTreeNode>();
+
+	/**
+	 * Adds a watched variable to the plan, used while the plan is being compiled
+	 * 
+	 * @param node
+	 * @param state
+	 * @param simulationTree
+	 *            the simulation tree which contains the node
+	 */
+	public void add(VariableNode node, IStateIdentifier state, AspectSubTreeNode simulationTree)
+	{
+		int tree = _pendingSimulationTrees.indexOf(simulationTree);
+		if(tree == -1)
+		{
+			tree = _pendingSimulationTrees.size();
+			_pendingSimulationTrees.add(simulationTree);
+		}
+		_pendingNodes.add(node);
+		_pendingStates.add(state);
+		_pendingTrees.add(tree);
+	}
+
+	/**
+	 * @param feedAllSamples
+	 *            true to add every step of a batch to the tree, false to add only the last one. Ignored when a sampler is set.
+	 */
+	public void setFeedAllSamples(boolean feedAllSamples)
+	{
+		_feedAllSamples = feedAllSamples;
+	}
+
+	/**
+	 * Freezes the variables added so far into the arrays used at every step
+	 * 
+	 * @param recordingStore
+	 *            the store where the watched states are recorded, can be null
+	 */
+	public void compile(LEMSRecordingStore recordingStore)
+	{
+		int size = _pendingNodes.size();
+		_nodes = _pendingNodes.toArray(new VariableNode[size]);
+		_states = _pendingStates.toArray(new IStateIdentifier[size]);
+		_trees = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			_trees[i] = _pendingTrees.get(i);
+		}
+		_simulationTrees = _pendingSimulationTrees.toArray(new AspectSubTreeNode[_pendingSimulationTrees.size()]);
+		_values = new double[size][];
+		_sampled = new double[size][];
+		_rowCount = 0;
+		_recordings = null;
+		if(recordingStore != null)
+		{
+			_recordings = new DoubleRingBuffer[size];
+			for(int i = 0; i < size; i++)
+			{
+				_recordings[i] = recordingStore.getOrCreateRecording(_states[i]);
+			}
+		}
+		_pendingNodes.clear();
+		_pendingStates.clear();
+		_pendingTrees.clear();
+		_pendingSimulationTrees.clear();
+		_layout = null;
+	}
+
+	/**
+	 * @param index
+	 * @return the watched variable at the given index of the compiled plan
+	 */
+	public VariableNode getNode(int index)
+	{
+		return _nodes[index];
+	}
+
+	/**
+	 * @param sampler
+	 *            the sampler choosing which steps are added to the tree, null to add them as told by the feed
+	 */
+	public void setSampler(LEMSSampler sampler)
+	{
+		_sampler = sampler;
+	}
+
+	/**
+	 * @return the states shown by the watched variables
+	 */
+	public List<IStateIdentifier> getStates()
+	{
+		return Arrays.asList(_states);
+	}
+
+	/**
+	 * @return the number of watched variables in this plan
+	 */
+	public int size()
+	{
+		return _nodes.length;
+	}
+
+	/**
+	 * Adds to every watched variable the rows chosen among the results
+	 * 
+	 * @param results
+	 * @param changeTracker
+	 *            where the variables which received values are reported
+	 * @return the number of quantities added to the variables
+	 * @throws GeppettoExecutionException
+	 */
+	public int update(LEMSResultsBuffer results, LEMSChangeTracker changeTracker) throws GeppettoExecutionException
+	{
+		bind(results);
+		int steps = results.getSteps();
+		for(int i = 0; i < _nodes.length; i++)
+		{
+			_values[i] = results.getValues(_columns[i]);
+			if(_recordings != null)
+			{
+				_recordings[i].append(_values[i], 0, steps);
+			}
+		}
+		if(_rows.length < steps)
+		{
+			_rows = new int[steps];
+			_rowTimes = new double[steps];
+		}
+		double[][] fed = _values;
+		if(_sampler != null)
+		{
+			for(int i = 0; i < _nodes.length; i++)
+			{
+				if(_sampled[i] == null || _sampled[i].length < steps)
+				{
+					_sampled[i] = new double[steps];
+				}
+			}
+			fed = _sampled;
+			_rowCount = _sampler.sample(_values, _nodes.length, steps, _rows, _sampled);
+		}
+		else
+		{
+			int first = _feedAllSamples ? 0 : Math.max(0, steps - 1);
+			_rowCount = steps - first;
+			for(int row = 0; row < _rowCount; row++)
+			{
+				_rows[row] = first + row;
+			}
+		}
+		for(int row = 0; row < _rowCount; row++)
+		{
+			_rowTimes[row] = results.getTime(_rows[row]);
+		}
+
+		int quantities = 0;
+		for(int i = 0; i < _nodes.length; i++)
+		{
+			boolean changed = false;
+			for(int row = 0; row < _rowCount; row++)
+			{
+				double value = fed == _values ? _values[i][_rows[row]] : fed[i][row];
+				if(!Double.isNaN(value))
+				{
+					Quantity quantity = new Quantity();
+					quantity.setValue(new DoubleValue(value));
+					_nodes[i].addQuantity(quantity);
+					quantities++;
+					changed = true;
+				}
+			}
+			if(changed)
+			{
+				changeTracker.nodeChanged(_nodes[i], _simulationTrees[_trees[i]]);
+			}
+		}
+		return quantities;
+	}
+
+	/**
+	 * @return the number of rows added to the watched variables by the last update, the time node has to be advanced as many times
+	 */
+	public int getRows()
+	{
+		return _rowCount;
+	}
+
+	/**
+	 * @param row
+	 * @return the simulation time shown by a row of the last update
+	 */
+	public double getRowTime(int row)
+	{
+		return _rowTimes[row];
+	}
+
+	/**
+	 * Resolves the column of every watched state, this is only done again when the layout of the results changes
+	 * 
+	 * @param results
+	 * @throws GeppettoExecutionException
+	 */
+	private void bind(LEMSResultsBuffer results) throws GeppettoExecutionException
+	{
+		if(_layout == results.getLayout() && _layoutVersion == results.getLayoutVersion())
+		{
+			return;
+		}
+		_columns = new int[_states.length];
+		for(int i = 0; i < _states.length; i++)
+		{
+			_columns[i] = results.getColumn(_states[i]);
+			if(_columns[i] == -1)
+			{
+				throw new GeppettoExecutionException(_states[i] + " not found in LEMS results:" + results.getStates());
+			}
+			// the watched variables are created without a unit, it's known once their state is recorded
+			String dimension = results.getDimension(_states[i]);
+			if(dimension != null && _nodes[i].getUnit() == null)
+			{
+				_nodes[i].setUnit(LEMSUnits.getUnit(dimension).toString());
+				_nodes[i].setScalingFactor(LEMSUnits.getScalingFactor(dimension));
+			}
+		}
+		_layout = results.getLayout();
+		_layoutVersion = results.getLayoutVersion();
+	}
+}
@@ -54,6 +54,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
+ * Plays back the recordings of a NeuroML model, several samples can be played back for every call to simulate. The recordings are read by Geppetto core in advanceRecordings, which writes them
+ * into the runtime tree, this service neither reads ahead nor seeks in them.
+ * 
  * @author matteocantarelli
  * 
  */
@@ -61,11 +64,18 @@ import org.springframework.stereotype.Service;
 public class NeuroMLSimulatorService extends ASimulator
 {
 
+	/**
+	 * Simulator parameter of the aspect configuration holding the number of recorded samples played back for every call to simulate
+	 */
+	public static final String STEPS_PER_SIMULATE = JLEMSSimulatorService.STEPS_PER_SIMULATE;
+
 	@Autowired
 	private SimulatorConfig neuroMLSimulatorConfig;
 
 	private static Log logger = LogFactory.getLog(NeuroMLSimulatorService.class);
 
+	private int _stepsPerSimulate = 1;
+
 	@Override
 	public void initialize(List<IModel> models, ISimulatorCallbackListener listener) throws GeppettoInitializationException, GeppettoExecutionException
 	{
@@ -78,13 +88,38 @@ public class NeuroMLSimulatorService extends ASimulator
 	}
 
 	@Override
-	public void simulate(IAspectConfiguration arg0, AspectNode aspect) throws GeppettoExecutionException
+	public void simulate(IAspectConfiguration aspectConfiguration, AspectNode aspect) throws GeppettoExecutionException
 	{
-		advanceTimeStep(0, aspect);
-		advanceRecordings(aspect);
+		// the samples are played back in batches so that every client request carries many of them
+		int steps = SimulatorParameters.getInt(aspectConfiguration, STEPS_PER_SIMULATE, _stepsPerSimulate, 1);
+		for(int i = 0; i < steps; i++)
+		{
+			advanceTimeStep(0, aspect);
+			advanceRecordings(aspect);
+		}
 		notifySimulatorHasStepped(aspect);
 	}
 
+	/**
+	 * @return the number of recorded samples played back for every call to simulate when the aspect configuration doesn't specify it
+	 */
+	public int getStepsPerSimulate()
+	{
+		return _stepsPerSimulate;
+	}
+
+	/**
+	 * @param stepsPerSimulate
+	 */
+	public void setStepsPerSimulate(int stepsPerSimulate)
+	{
+		if(stepsPerSimulate < 1)
+		{
+			throw new IllegalArgumentException("The number of steps per simulate has to be at least 1, found " + stepsPerSimulate);
+		}
+		this._stepsPerSimulate = stepsPerSimulate;
+	}
+
 	@Override
 	public String getName()
 	{ 
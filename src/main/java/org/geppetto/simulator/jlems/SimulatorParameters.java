@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.core.data.model.IAspectConfiguration;
+
+/**
+ * Reads the simulator parameters of an aspect configuration
+ */
+final class SimulatorParameters
+{
+
+	private SimulatorParameters()
+	{
+	}
+
+	/**
+	 * @param aspectConfiguration
+	 * @param name
+	 * @param defaultValue
+	 *            the value used when the parameter is not specified
+	 * @param minimum
+	 *            the minimum value accepted
+	 * @return the value of the simulator parameter
+	 * @throws GeppettoExecutionException
+	 */
+	static int getInt(IAspectConfiguration aspectConfiguration, String name, int defaultValue, int minimum) throws GeppettoExecutionException
+	{
+		String value = get(aspectConfiguration, name);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+		try
+		{
+			int intValue = Integer.parseInt(value.trim());
+			if(intValue >= minimum)
+			{
+				return intValue;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// handled below
+		}
+		throw new GeppettoExecutionException("Invalid value for " + name + ": " + value);
+	}
+
+	/**
+	 * @param aspectConfiguration
+	 * @param name
+	 * @param defaultValue
+	 *            the value used when the parameter is not specified
+	 * @param minimum
+	 *            the minimum value accepted
+	 * @return the value of the simulator parameter
+	 * @throws GeppettoExecutionException
+	 */
+	static double getDouble(IAspectConfiguration aspectConfiguration, String name, double defaultValue, double minimum) throws GeppettoExecutionException
+	{
+		String value = get(aspectConfiguration, name);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+		try
+		{
+			double doubleValue = Double.parseDouble(value.trim());
+			if(doubleValue >= minimum)
+			{
+				return doubleValue;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// handled below
+		}
+		throw new GeppettoExecutionException("Invalid value for " + name + ": " + value);
+	}
+
+	/**
+	 * @param aspectConfiguration
+	 * @param name
+	 * @param defaultValue
+	 *            the value used when the parameter is not specified
+	 * @return the value of the simulator parameter
+	 */
+	static boolean getBoolean(IAspectConfiguration aspectConfiguration, String name, boolean defaultValue)
+	{
+		String value = get(aspectConfiguration, name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * @param aspectConfiguration
+	 * @param name
+	 * @return the value of the simulator parameter or null if it's not specified
+	 */
+	static String get(IAspectConfiguration aspectConfiguration, String name)
+	{
+		if(aspectConfiguration != null && aspectConfiguration.getSimulatorConfiguration() != null && aspectConfiguration.getSimulatorConfiguration().getParameters() != null)
+		{
+			return aspectConfiguration.getSimulatorConfiguration().getParameters().get(name);
+		}
+		return null;
+	}
+}
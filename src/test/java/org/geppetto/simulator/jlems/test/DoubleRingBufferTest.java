@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.DoubleRingBuffer;
+import org.junit.Test;
+
+public class DoubleRingBufferTest
+{
+
+	@Test
+	public void testRetentionWindow()
+	{
+		DoubleRingBuffer buffer = new DoubleRingBuffer(3);
+		buffer.append(new double[] { 1, 2, 3, 4, 5 }, 0, 5);
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals(5, buffer.getAppended());
+		Assert.assertEquals(2, buffer.getDiscarded());
+		Assert.assertEquals(3d, buffer.get(0), 0);
+		Assert.assertEquals(5d, buffer.getLast(), 0);
+		double[] values = buffer.toArray();
+		Assert.assertEquals(3, values.length);
+		Assert.assertEquals(4d, values[1], 0);
+	}
+
+	@Test
+	public void testGrowsWithoutWindow()
+	{
+		DoubleRingBuffer buffer = new DoubleRingBuffer(0);
+		for(int i = 0; i < 5000; i++)
+		{
+			buffer.append(i);
+		}
+		Assert.assertEquals(5000, buffer.size());
+		Assert.assertEquals(0, buffer.getDiscarded());
+		Assert.assertEquals(0d, buffer.get(0), 0);
+		Assert.assertEquals(4999d, buffer.getLast(), 0);
+	}
+
+	@Test
+	public void testGrowsUpToWindow()
+	{
+		DoubleRingBuffer buffer = new DoubleRingBuffer(1500);
+		for(int i = 0; i < 2000; i++)
+		{
+			buffer.append(i);
+		}
+		Assert.assertEquals(1500, buffer.size());
+		Assert.assertEquals(500d, buffer.get(0), 0);
+		Assert.assertEquals(1999d, buffer.getLast(), 0);
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.LEMSEventDetector;
+import org.geppetto.simulator.jlems.LEMSEventLog;
+import org.junit.Test;
+import org.lemsml.jlems.api.StateIdentifier;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+public class LEMSEventDetectorTest
+{
+
+	@Test
+	public void testUpwardCrossings()
+	{
+		IStateIdentifier a = new StateIdentifier("net/pop/0/v");
+		IStateIdentifier b = new StateIdentifier("net/pop/1/v");
+		LEMSEventDetector detector = new LEMSEventDetector(Arrays.asList(a, b), 0);
+		double[] values = { -0.07, -0.01, 0.03, 0.02, -0.06, -0.02, 0.02 };
+		for(int step = 0; step < values.length; step++)
+		{
+			detector.detect(0, values[step], step + 1, 1);
+			detector.detect(1, -0.07, step + 1, 1);
+		}
+		LEMSEventLog log = detector.getLog();
+		Assert.assertEquals(2, log.size());
+		Assert.assertEquals(0, log.getSource(0));
+		// crossed a quarter of the way from -0.01 to 0.03
+		Assert.assertEquals(2.25, log.getTime(0), 1e-9);
+		Assert.assertEquals(6.5, log.getTime(1), 1e-9);
+		Assert.assertEquals(2, log.getTimes(0).length);
+		Assert.assertEquals(0, log.getTimes(1).length);
+
+		log.truncate(5);
+		Assert.assertEquals(1, log.size());
+	}
+
+	@Test
+	public void testNoEventBeforeFirstValue()
+	{
+		LEMSEventDetector detector = new LEMSEventDetector(Arrays.<IStateIdentifier> asList(new StateIdentifier("v")), 0);
+		detector.detect(0, 0.02, 1, 1);
+		detector.reset();
+		detector.detect(0, 0.03, 2, 1);
+		Assert.assertEquals(0, detector.getLog().size());
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.simulator.jlems.DoubleRingBuffer;
+import org.geppetto.simulator.jlems.LEMSParameterSweep;
+import org.geppetto.simulator.jlems.LEMSRecordingStore;
+import org.junit.Test;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+
+public class LEMSParameterSweepTest
+{
+
+	private static final String[] RATES = { "0.4", "0.1", "0.2" };
+
+	private static LEMSParameterSweep.SourceVariants createVariants() throws Exception
+	{
+		List<Map<String, String>> parameterSets = new ArrayList<Map<String, String>>();
+		for(String rate : RATES)
+		{
+			parameterSets.add(Collections.singletonMap("RATE", rate));
+		}
+		return new LEMSParameterSweep.SourceVariants(LEMSTestModel.getSource(), parameterSets);
+	}
+
+	@Test
+	public void testSubstitution() throws Exception
+	{
+		LEMSParameterSweep.SourceVariants variants = createVariants();
+		Assert.assertEquals(RATES.length, variants.size());
+		for(int i = 0; i < RATES.length; i++)
+		{
+			String source = variants.getSource(i);
+			Assert.assertFalse(source.contains("@RATE@"));
+			Assert.assertTrue(source.contains("rate=\"" + RATES[i] + "per_ms\""));
+		}
+	}
+
+	@Test
+	public void testResultsInOrderOfVariants() throws Exception
+	{
+		List<LEMSRecordingStore> recordings = new LEMSParameterSweep(createVariants(), 2).run(RATES.length);
+		Assert.assertEquals(RATES.length, recordings.size());
+		for(int i = 0; i < RATES.length; i++)
+		{
+			DoubleRingBuffer x0 = recordings.get(i).getRecording(LEMSTestModel.X0);
+			// 10ms at 0.01ms
+			Assert.assertEquals(1000, x0.size());
+			// the decay between the first and the last step identifies the rate of the variant
+			double expected = Math.exp(-Double.parseDouble(RATES[i]) * 9.99);
+			Assert.assertEquals(expected, x0.getLast() / x0.get(0), expected * 0.02);
+		}
+	}
+
+	@Test
+	public void testFailedVariant() throws Exception
+	{
+		final LEMSParameterSweep.SourceVariants variants = createVariants();
+		final IllegalStateException failure = new IllegalStateException("variant 1 can't be read");
+		LEMSParameterSweep sweep = new LEMSParameterSweep(new LEMSParameterSweep.IVariant()
+		{
+			@Override
+			public ILEMSDocument getDocument(int variant) throws Exception
+			{
+				if(variant == 1)
+				{
+					throw failure;
+				}
+				return variants.getDocument(variant);
+			}
+		}, 1);
+		try
+		{
+			sweep.run(RATES.length);
+			Assert.fail("The sweep should fail with its variant");
+		}
+		catch(GeppettoExecutionException e)
+		{
+			Assert.assertSame(failure, e.getCause());
+		}
+	}
+}
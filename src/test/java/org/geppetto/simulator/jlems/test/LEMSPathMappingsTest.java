@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.LEMSPathMappings;
+import org.junit.After;
+import org.junit.Test;
+
+public class LEMSPathMappingsTest
+{
+
+	private static final String ASPECT = "network.electrical";
+
+	@After
+	public void clearShared()
+	{
+		LEMSPathMappings.clearShared();
+	}
+
+	/**
+	 * The structure each session lists from its own runtime tree
+	 */
+	private String listStructure(int populations)
+	{
+		StringBuilder structure = new StringBuilder();
+		for(int i = 0; i < populations; i++)
+		{
+			structure.append("pop" + i).append(' ').append("electrical").append('\n');
+		}
+		return structure.toString();
+	}
+
+	@Test
+	public void testSessionsLoadingTheSameModelShare()
+	{
+		LEMSPathMappings first = LEMSPathMappings.getShared(ASPECT, listStructure(3));
+		LEMSPathMappings second = LEMSPathMappings.getShared(ASPECT, listStructure(3));
+		Assert.assertSame(first, second);
+
+		String geppettoPath = first.put("pop0.0.v", "network.pop0[0].electrical.SimulationTree.v");
+		Assert.assertSame(geppettoPath, second.put("pop0.0.v", new String("network.pop0[0].electrical.SimulationTree.v")));
+		Assert.assertEquals("pop0.0.v", second.getLemsPath(geppettoPath));
+		Assert.assertEquals(1, second.size());
+	}
+
+	@Test
+	public void testDifferentStructuresAreNotShared()
+	{
+		LEMSPathMappings first = LEMSPathMappings.getShared(ASPECT, listStructure(3));
+		Assert.assertNotSame(first, LEMSPathMappings.getShared(ASPECT, listStructure(4)));
+		Assert.assertNotSame(first, LEMSPathMappings.getShared("other.electrical", listStructure(3)));
+	}
+
+	@Test
+	public void testReleasedWhenUnused() throws Exception
+	{
+		LEMSPathMappings mappings = LEMSPathMappings.getShared(ASPECT, listStructure(3));
+		mappings.put("pop0.0.v", "network.pop0[0].electrical.SimulationTree.v");
+		Assert.assertEquals(1, LEMSPathMappings.getSharedCount());
+
+		// the session was closed
+		mappings = null;
+		for(int i = 0; i < 100 && LEMSPathMappings.getSharedCount() > 0; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(0, LEMSPathMappings.getSharedCount());
+		Assert.assertEquals(0, LEMSPathMappings.getShared(ASPECT, listStructure(3)).size());
+	}
+}
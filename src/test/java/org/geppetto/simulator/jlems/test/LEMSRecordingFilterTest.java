@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.LEMSRecordingFilter;
+import org.geppetto.simulator.jlems.LEMSResultsBuffer;
+import org.junit.Test;
+import org.lemsml.jlems.api.LEMSRunConfiguration;
+import org.lemsml.jlems.api.StateIdentifier;
+import org.lemsml.jlems.api.StateRecord;
+import org.lemsml.jlems.api.interfaces.ILEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+public class LEMSRecordingFilterTest
+{
+
+	@Test
+	public void testWatchAfterUnwatchedStep()
+	{
+		IStateIdentifier v = new StateIdentifier("hhpop[0]/v");
+		IStateIdentifier m = new StateIdentifier("hhpop[0]/bioPhys1/membraneProperties/naChans/na/m/q");
+		ILEMSRunConfiguration runConfig = new LEMSRunConfiguration(0.01, 0.3);
+		runConfig.addStateRecord(new StateRecord(v));
+		runConfig.addStateRecord(new StateRecord(m));
+		LEMSRecordingFilter filter = new LEMSRecordingFilter(Arrays.asList(runConfig));
+		Assert.assertTrue(filter.isRecordingAll());
+
+		// the first step compiles an empty watch plan
+		filter.recordOnly(Collections.<IStateIdentifier> emptySet());
+		filter.apply();
+		Assert.assertFalse(filter.isRecordingAll());
+		Assert.assertEquals(0, runConfig.getRecordedStates().size());
+		LEMSResultsBuffer narrowed = new LEMSResultsBuffer(1);
+		narrowed.setComplete(filter.isRecordingAll());
+		// a batch recorded before the watch list changed can't be used to build the new nodes
+		Assert.assertFalse(narrowed.isComplete());
+
+		// a variable is watched, every state is recorded again before the next batch
+		filter.recordAll();
+		filter.apply();
+		Assert.assertTrue(filter.isRecordingAll());
+		Assert.assertEquals(2, runConfig.getRecordedStates().size());
+		LEMSResultsBuffer complete = new LEMSResultsBuffer(1);
+		complete.setComplete(filter.isRecordingAll());
+		Assert.assertTrue(complete.isComplete());
+
+		// the new plan records only the watched state
+		filter.recordOnly(Arrays.asList(v));
+		filter.apply();
+		Assert.assertEquals(1, runConfig.getRecordedStates().size());
+		Assert.assertSame(v, runConfig.getRecordedStates().get(0).getState());
+		Assert.assertEquals(Arrays.asList(v, m), filter.getDocumentStates());
+	}
+
+	@Test
+	public void testCompleteIsCopied()
+	{
+		LEMSResultsBuffer batch = new LEMSResultsBuffer(1);
+		batch.setComplete(false);
+		LEMSResultsBuffer target = new LEMSResultsBuffer(1);
+		batch.copyTo(target);
+		Assert.assertFalse(target.isComplete());
+	}
+
+	@Test
+	public void testNarrowedAfterInitialize() throws Exception
+	{
+		// jLEMS reads the recorded states of the run configuration at every step, narrowing them after the simulators were initialized changes what they record
+		LEMSTestModel model = new LEMSTestModel("0.1");
+		LEMSRecordingFilter filter = new LEMSRecordingFilter(Arrays.asList(model.getRunConfig()));
+		LEMSResultsBuffer results = new LEMSResultsBuffer(10);
+		model.advance(results, 10);
+		Assert.assertTrue(results.isRecorded(results.getColumn(LEMSTestModel.X0)));
+		Assert.assertTrue(results.isRecorded(results.getColumn(LEMSTestModel.X1)));
+
+		filter.recordOnly(Arrays.asList(LEMSTestModel.X1));
+		filter.apply();
+		model.advance(results, 10);
+		int x0 = results.getColumn(LEMSTestModel.X0);
+		int x1 = results.getColumn(LEMSTestModel.X1);
+		Assert.assertFalse(results.isRecorded(x0));
+		Assert.assertTrue(results.isRecorded(x1));
+		for(int step = 0; step < results.getSteps(); step++)
+		{
+			Assert.assertTrue(Double.isNaN(results.getValues(x0)[step]));
+			Assert.assertFalse(Double.isNaN(results.getValues(x1)[step]));
+		}
+
+		filter.recordAll();
+		filter.apply();
+		model.advance(results, 10);
+		Assert.assertTrue(results.isRecorded(x0));
+		Assert.assertFalse(Double.isNaN(results.getValues(x0)[9]));
+	}
+
+	@Test
+	public void testUnrecordedAfterGrowth() throws Exception
+	{
+		LEMSTestModel model = new LEMSTestModel("0.1");
+		LEMSRecordingFilter filter = new LEMSRecordingFilter(Arrays.asList(model.getRunConfig()));
+		LEMSResultsBuffer results = new LEMSResultsBuffer(2);
+		model.advance(results, 2);
+		filter.recordOnly(Arrays.asList(LEMSTestModel.X1));
+		filter.apply();
+		// the buffer grows past the capacity it had when the column was last recorded
+		model.advance(results, 20);
+		double[] x0 = results.getValues(results.getColumn(LEMSTestModel.X0));
+		for(int step = 0; step < results.getSteps(); step++)
+		{
+			Assert.assertTrue(Double.isNaN(x0[step]));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import junit.framework.Assert;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.simulator.jlems.LEMSSampler;
+import org.junit.Test;
+
+public class LEMSSamplerTest
+{
+
+	@Test
+	public void testEveryNthAcrossBatches() throws GeppettoExecutionException
+	{
+		LEMSSampler sampler = LEMSSampler.create("every:3");
+		int[] rows = new int[4];
+		double[][] out = new double[1][4];
+		Assert.assertEquals(1, sampler.sample(new double[][] { { 1, 2, 3, 4 } }, 1, 4, rows, out));
+		Assert.assertEquals(2, rows[0]);
+		Assert.assertEquals(3d, out[0][0], 0);
+		Assert.assertEquals(1, sampler.sample(new double[][] { { 5, 6, 7, 8 } }, 1, 4, rows, out));
+		Assert.assertEquals(1, rows[0]);
+		Assert.assertEquals(6d, out[0][0], 0);
+	}
+
+	@Test
+	public void testEnvelopeKeepsOrder() throws GeppettoExecutionException
+	{
+		LEMSSampler sampler = LEMSSampler.create("envelope:4");
+		int[] rows = new int[8];
+		double[][] out = new double[2][8];
+		double[][] values = { { 0, 5, -2, 1, 3, 3, 3, 3 }, { 1, Double.NaN, 2, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN } };
+		// every variable gets two rows per window, both at the time of the last step of the window
+		Assert.assertEquals(4, sampler.sample(values, 2, 8, rows, out));
+		Assert.assertEquals(3, rows[0]);
+		Assert.assertEquals(3, rows[1]);
+		Assert.assertEquals(7, rows[2]);
+		Assert.assertEquals(7, rows[3]);
+		Assert.assertEquals(5d, out[0][0], 0);
+		Assert.assertEquals(-2d, out[0][1], 0);
+		// a flat window yields the same value twice
+		Assert.assertEquals(3d, out[0][2], 0);
+		Assert.assertEquals(3d, out[0][3], 0);
+		// NaN samples are skipped, a window without a number yields NaN
+		Assert.assertEquals(2d, out[1][0], 0);
+		Assert.assertEquals(0d, out[1][1], 0);
+		Assert.assertTrue(Double.isNaN(out[1][2]));
+		Assert.assertTrue(Double.isNaN(out[1][3]));
+	}
+
+	@Test
+	public void testEnvelopeAcrossBatches() throws GeppettoExecutionException
+	{
+		LEMSSampler sampler = LEMSSampler.create("envelope:3");
+		int[] rows = new int[2];
+		double[][] out = new double[1][2];
+		Assert.assertEquals(0, sampler.sample(new double[][] { { 4, 1 } }, 1, 2, rows, out));
+		Assert.assertEquals(2, sampler.sample(new double[][] { { 2, 9 } }, 1, 2, rows, out));
+		Assert.assertEquals(0, rows[0]);
+		Assert.assertEquals(4d, out[0][0], 0);
+		Assert.assertEquals(1d, out[0][1], 0);
+	}
+
+	@Test
+	public void testChangeThreshold() throws GeppettoExecutionException
+	{
+		LEMSSampler sampler = LEMSSampler.create("threshold:0.5");
+		int[] rows = new int[5];
+		double[][] out = new double[2][5];
+		double[][] values = { { 1, 1.2, 1.6, 1.7, 0.9 }, { 0, 0, 0, 0.6, Double.NaN } };
+		// a step is kept for every variable as soon as one of them moved
+		Assert.assertEquals(4, sampler.sample(values, 2, 5, rows, out));
+		Assert.assertEquals(0, rows[0]);
+		Assert.assertEquals(2, rows[1]);
+		Assert.assertEquals(3, rows[2]);
+		Assert.assertEquals(4, rows[3]);
+		Assert.assertEquals(1.6d, out[0][1], 0);
+		Assert.assertEquals(0.6d, out[1][2], 0);
+		Assert.assertEquals(0.9d, out[0][3], 0);
+		Assert.assertTrue(Double.isNaN(out[1][3]));
+	}
+
+	@Test
+	public void testAllSamples() throws GeppettoExecutionException
+	{
+		Assert.assertNull(LEMSSampler.create(null));
+		Assert.assertNull(LEMSSampler.create("all"));
+		Assert.assertNull(LEMSSampler.create("every:1"));
+	}
+
+	@Test(expected = GeppettoExecutionException.class)
+	public void testInvalidPolicy() throws GeppettoExecutionException
+	{
+		LEMSSampler.create("envelope:x");
+	}
+}
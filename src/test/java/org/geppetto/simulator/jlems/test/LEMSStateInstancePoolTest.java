@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.JLEMSSimulatorService;
+import org.geppetto.simulator.jlems.LEMSStateInstancePool;
+import org.junit.Test;
+import org.lemsml.jlems.api.LEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+import org.lemsml.jlems.api.interfaces.ILEMSStateInstance;
+
+public class LEMSStateInstancePoolTest
+{
+
+	/**
+	 * Counts the builds instead of building
+	 */
+	private static class CountingPool extends LEMSStateInstancePool
+	{
+		private AtomicInteger _builds = new AtomicInteger();
+
+		CountingPool(int maximumDocuments)
+		{
+			super(maximumDocuments);
+		}
+
+		@Override
+		protected JLEMSSimulatorService.BuiltModel build(ILEMSDocument document) throws Exception
+		{
+			_builds.incrementAndGet();
+			return new JLEMSSimulatorService.BuiltModel(Collections.<ILEMSStateInstance> emptyList(), new LEMSRunConfiguration(0.01, 0.3));
+		}
+	}
+
+	private static ILEMSDocument createDocument()
+	{
+		return (ILEMSDocument) Proxy.newProxyInstance(ILEMSDocument.class.getClassLoader(), new Class<?>[] { ILEMSDocument.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+			{
+				if(method.getName().equals("hashCode"))
+				{
+					return System.identityHashCode(proxy);
+				}
+				if(method.getName().equals("equals"))
+				{
+					return proxy == args[0];
+				}
+				return null;
+			}
+		});
+	}
+
+	private static void awaitAvailable(LEMSStateInstancePool pool, ILEMSDocument document, int available) throws InterruptedException
+	{
+		for(int i = 0; i < 500 && pool.getAvailable(document) != available; i++)
+		{
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(available, pool.getAvailable(document));
+	}
+
+	@Test
+	public void testNoBuildAheadByDefault() throws Exception
+	{
+		CountingPool pool = new CountingPool(LEMSStateInstancePool.DEFAULT_MAXIMUM_DOCUMENTS);
+		ILEMSDocument document = createDocument();
+		pool.take(document, 0);
+		pool.take(document, 0);
+		Thread.sleep(50);
+		Assert.assertEquals(2, pool._builds.get());
+		Assert.assertEquals(0, pool.getAvailable(document));
+	}
+
+	@Test
+	public void testRefillAfterReset() throws Exception
+	{
+		CountingPool pool = new CountingPool(LEMSStateInstancePool.DEFAULT_MAXIMUM_DOCUMENTS);
+		ILEMSDocument document = createDocument();
+		// initialize doesn't build ahead of time
+		pool.take(document, 0);
+		Thread.sleep(50);
+		Assert.assertEquals(1, pool._builds.get());
+		Assert.assertEquals(0, pool.getAvailable(document));
+
+		// the simulation started, the next model is built in the background
+		pool.prepare(document, 1);
+		awaitAvailable(pool, document, 1);
+		Assert.assertEquals(2, pool._builds.get());
+
+		// a reset takes the model built ahead of time and builds the next one
+		pool.take(document, 1);
+		awaitAvailable(pool, document, 1);
+		Assert.assertEquals(3, pool._builds.get());
+
+		pool.release(document);
+		Assert.assertEquals(0, pool.getAvailable(document));
+		pool.take(document, 0);
+		Assert.assertEquals(4, pool._builds.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDropped() throws Exception
+	{
+		CountingPool pool = new CountingPool(1);
+		ILEMSDocument first = createDocument();
+		ILEMSDocument second = createDocument();
+		pool.prepare(first, 1);
+		awaitAvailable(pool, first, 1);
+		pool.prepare(second, 1);
+		awaitAvailable(pool, second, 1);
+		Assert.assertEquals(0, pool.getAvailable(first));
+	}
+
+	@Test
+	public void testDocumentsNotKeptAlive() throws Exception
+	{
+		CountingPool pool = new CountingPool(LEMSStateInstancePool.DEFAULT_MAXIMUM_DOCUMENTS);
+		ILEMSDocument document = createDocument();
+		pool.prepare(document, 1);
+		awaitAvailable(pool, document, 1);
+		Assert.assertEquals(1, pool.getDocuments());
+
+		document = null;
+		for(int i = 0; i < 100 && pool.getDocuments() > 0; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(0, pool.getDocuments());
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.LEMSStepMetrics;
+import org.geppetto.simulator.jlems.LEMSStepMetrics.Phase;
+import org.junit.Test;
+
+public class LEMSStepMetricsTest
+{
+
+	@Test
+	public void testTimers()
+	{
+		LEMSStepMetrics metrics = new LEMSStepMetrics(null);
+		for(int i = 1; i <= 100; i++)
+		{
+			metrics.record(Phase.ADVANCE, i * 1000000L);
+		}
+		Assert.assertEquals(100, metrics.getCount("advance"));
+		Assert.assertEquals(50.5, metrics.getMeanMillis("ADVANCE"), 1e-9);
+		Assert.assertEquals(100d, metrics.getMaxMillis("ADVANCE"), 1e-9);
+		// percentiles are the upper bound of a power of two bucket
+		double p50 = metrics.getPercentileMillis("ADVANCE", 50);
+		Assert.assertTrue(p50 >= 50 && p50 <= 100);
+		Assert.assertEquals(0, metrics.getCount("NOTIFY"));
+		Assert.assertEquals(0d, metrics.getPercentileMillis("NOTIFY", 99), 0);
+	}
+
+	@Test
+	public void testParent()
+	{
+		LEMSStepMetrics parent = new LEMSStepMetrics(null);
+		LEMSStepMetrics metrics = new LEMSStepMetrics(parent);
+		metrics.stepped(10, 40);
+		metrics.quantitiesAllocated(5);
+		metrics.record(Phase.TREE_UPDATE, 1000);
+		Assert.assertEquals(10, parent.getSteps());
+		Assert.assertEquals(40, parent.getStatesRecorded());
+		Assert.assertEquals(5, parent.getQuantitiesAllocated());
+		Assert.assertEquals(1, parent.getCount("TREE_UPDATE"));
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getSteps());
+		Assert.assertEquals(10, parent.getSteps());
+	}
+}
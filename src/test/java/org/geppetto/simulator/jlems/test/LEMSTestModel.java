@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.geppetto.simulator.jlems.LEMSResultsBuffer;
+import org.lemsml.jlems.api.LEMSBuildConfiguration;
+import org.lemsml.jlems.api.LEMSBuildOptions;
+import org.lemsml.jlems.api.LEMSBuildOptionsEnum;
+import org.lemsml.jlems.api.LEMSBuilder;
+import org.lemsml.jlems.api.LEMSDocumentReader;
+import org.lemsml.jlems.api.LEMSResultsContainer;
+import org.lemsml.jlems.api.LEMSSimulator;
+import org.lemsml.jlems.api.StateIdentifier;
+import org.lemsml.jlems.api.interfaces.ILEMSBuildOptions;
+import org.lemsml.jlems.api.interfaces.ILEMSBuilder;
+import org.lemsml.jlems.api.interfaces.ILEMSDocument;
+import org.lemsml.jlems.api.interfaces.ILEMSResultsContainer;
+import org.lemsml.jlems.api.interfaces.ILEMSRunConfiguration;
+import org.lemsml.jlems.api.interfaces.ILEMSSimulator;
+import org.lemsml.jlems.api.interfaces.ILEMSStateInstance;
+import org.lemsml.jlems.api.interfaces.IStateIdentifier;
+
+/**
+ * The decay model of the test resources run with jLEMS, for the tests which need real results. The model is a population of two cells recording the state x of both.
+ */
+public class LEMSTestModel
+{
+
+	public static final IStateIdentifier X0 = new StateIdentifier("pop[0]/x");
+
+	public static final IStateIdentifier X1 = new StateIdentifier("pop[1]/x");
+
+	private ILEMSRunConfiguration _runConfig;
+	private List<ILEMSSimulator> _simulators = new ArrayList<ILEMSSimulator>();
+	private double _time = 0;
+
+	/**
+	 * Builds the model and initializes a simulator for every state instance, as the jLEMS simulator does
+	 * 
+	 * @param rate
+	 *            the decay rate of the cells in 1/ms
+	 * @throws Exception
+	 */
+	public LEMSTestModel(String rate) throws Exception
+	{
+		ILEMSDocument document = read(rate);
+		ILEMSBuilder builder = new LEMSBuilder();
+		builder.addDocument(document);
+		ILEMSBuildOptions options = new LEMSBuildOptions();
+		options.addBuildOption(LEMSBuildOptionsEnum.FLATTEN);
+		builder.build(new LEMSBuildConfiguration(), options);
+		_runConfig = LEMSDocumentReader.getLEMSRunConfiguration(document);
+		Collection<ILEMSStateInstance> stateInstances = builder.build(new LEMSBuildConfiguration(LEMSDocumentReader.getTarget(document)), options);
+		for(ILEMSStateInstance instance : stateInstances)
+		{
+			ILEMSSimulator simulator = new LEMSSimulator();
+			simulator.initialize(instance, _runConfig);
+			_simulators.add(simulator);
+		}
+	}
+
+	/**
+	 * @return the run configuration the simulators were initialized with
+	 */
+	public ILEMSRunConfiguration getRunConfig()
+	{
+		return _runConfig;
+	}
+
+	/**
+	 * @return the simulation time
+	 */
+	public double getTime()
+	{
+		return _time;
+	}
+
+	/**
+	 * Advances the simulators recording their results
+	 * 
+	 * @param results
+	 *            the buffer where the results are recorded, its previous content is cleared
+	 * @param steps
+	 * @throws Exception
+	 */
+	public void advance(LEMSResultsBuffer results, int steps) throws Exception
+	{
+		results.clear();
+		results.setStartTime(_time);
+		results.setTimestep(_runConfig.getTimestep());
+		ILEMSResultsContainer lemsResults = new LEMSResultsContainer();
+		for(int i = 0; i < steps; i++)
+		{
+			for(ILEMSSimulator simulator : _simulators)
+			{
+				simulator.advance(lemsResults);
+			}
+			results.record(lemsResults);
+			_time += _runConfig.getTimestep();
+		}
+	}
+
+	/**
+	 * @return the source of the model, the decay rate is written as @RATE@
+	 * @throws IOException
+	 */
+	public static String getSource() throws IOException
+	{
+		InputStream in = LEMSTestModel.class.getResourceAsStream("/decay.xml");
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, read);
+			}
+			return out.toString("UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * @param rate
+	 *            the decay rate of the cells in 1/ms
+	 * @return the parsed model
+	 * @throws Exception
+	 */
+	public static ILEMSDocument read(String rate) throws Exception
+	{
+		return new LEMSDocumentReader().readModel(getSource().replace("@RATE@", rate));
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.geppetto.simulator.jlems.LEMSTimeSeriesFile;
+import org.junit.Test;
+
+public class LEMSTimeSeriesFileTest
+{
+
+	@Test
+	public void testAppendAndRead() throws Exception
+	{
+		File file = File.createTempFile("lems", ".ts");
+		file.deleteOnExit();
+		LEMSTimeSeriesFile timeSeries = LEMSTimeSeriesFile.create(file, Arrays.asList("time", "hhpop[0]/v"), 16);
+		for(int i = 0; i < 100; i++)
+		{
+			timeSeries.append(new double[] { i * 0.01, -0.065 + i });
+		}
+		Assert.assertEquals(100, timeSeries.getRows());
+		Assert.assertEquals(0.5, timeSeries.read(50, 0), 1e-12);
+		Assert.assertEquals(-0.065 + 99, timeSeries.read(99, 1), 1e-12);
+		Assert.assertEquals(-0.065 + 3, timeSeries.read(3, 1), 1e-12);
+		timeSeries.close();
+
+		timeSeries = LEMSTimeSeriesFile.open(file);
+		Assert.assertEquals(100, timeSeries.getRows());
+		Assert.assertEquals(1, timeSeries.getColumn("hhpop[0]/v"));
+		timeSeries.append(new double[] { 1, 42 });
+		double[] values = new double[10];
+		Assert.assertEquals(3, timeSeries.readColumn(1, 98, values));
+		Assert.assertEquals(-0.065 + 98, values[0], 1e-12);
+		Assert.assertEquals(42d, values[2], 0);
+		timeSeries.close();
+	}
+
+	@Test
+	public void testWriteRegionGrows() throws Exception
+	{
+		File file = File.createTempFile("lems", ".ts");
+		file.deleteOnExit();
+		// the rows span many chunks and several mapped regions
+		LEMSTimeSeriesFile timeSeries = LEMSTimeSeriesFile.create(file, Arrays.asList("time", "x"), 4);
+		for(int i = 0; i < 1000; i++)
+		{
+			timeSeries.append(new double[] { i, -i });
+		}
+		for(int i = 0; i < 1000; i += 7)
+		{
+			Assert.assertEquals(-i, timeSeries.read(i, 1), 0);
+		}
+		timeSeries.close();
+
+		timeSeries = LEMSTimeSeriesFile.open(file);
+		Assert.assertEquals(1000, timeSeries.getRows());
+		double[] values = new double[1000];
+		Assert.assertEquals(1000, timeSeries.readColumn(0, 0, values));
+		for(int i = 0; i < 1000; i++)
+		{
+			Assert.assertEquals(i, values[i], 0);
+		}
+		timeSeries.close();
+	}
+
+	@Test
+	public void testSegments() throws Exception
+	{
+		File file = File.createTempFile("lems", ".ts");
+		file.deleteOnExit();
+		LEMSTimeSeriesFile timeSeries = LEMSTimeSeriesFile.create(file, Arrays.asList("time", "a", "b"), 16);
+		for(int i = 0; i < 20; i++)
+		{
+			timeSeries.append(new double[] { i, i + 100, i + 200 });
+		}
+		timeSeries.startSegment(Arrays.asList("time", "b"));
+		for(int i = 20; i < 30; i++)
+		{
+			timeSeries.append(new double[] { i, i + 200 });
+		}
+		Assert.assertEquals(2, timeSeries.getSegments());
+		Assert.assertEquals(1, timeSeries.getColumn("b"));
+		Assert.assertEquals(-1, timeSeries.getColumn("a"));
+		timeSeries.close();
+
+		timeSeries = LEMSTimeSeriesFile.open(file);
+		Assert.assertEquals(30, timeSeries.getRows());
+		Assert.assertEquals(2, timeSeries.getSegments());
+		Assert.assertEquals(0, timeSeries.getSegment(19));
+		Assert.assertEquals(1, timeSeries.getSegment(20));
+		Assert.assertEquals(20, timeSeries.getFirstRow(1));
+		Assert.assertEquals(Arrays.asList("time", "a", "b"), timeSeries.getColumns(0));
+		Assert.assertEquals(Arrays.asList("time", "b"), timeSeries.getColumns(1));
+		Assert.assertEquals(119d, timeSeries.read(19, 1), 0);
+		Assert.assertEquals(225d, timeSeries.read(25, 1), 0);
+		// a column is read up to the end of its segment
+		double[] values = new double[10];
+		Assert.assertEquals(2, timeSeries.readColumn(2, 18, values));
+		Assert.assertEquals(219d, values[1], 0);
+
+		timeSeries.append(new double[] { 30, 230 });
+		Assert.assertEquals(230d, timeSeries.read(30, 1), 0);
+		timeSeries.close();
+	}
+
+	@Test
+	public void testEmptySegmentReplaced() throws Exception
+	{
+		File file = File.createTempFile("lems", ".ts");
+		file.deleteOnExit();
+		LEMSTimeSeriesFile timeSeries = LEMSTimeSeriesFile.create(file, Arrays.asList("time", "a"), 16);
+		timeSeries.startSegment(Arrays.asList("time", "a", "b"));
+		timeSeries.append(new double[] { 0, 1, 2 });
+		Assert.assertEquals(1, timeSeries.getSegments());
+		timeSeries.close();
+
+		timeSeries = LEMSTimeSeriesFile.open(file);
+		Assert.assertEquals(1, timeSeries.getSegments());
+		Assert.assertEquals(2d, timeSeries.read(0, 2), 0);
+		timeSeries.close();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadPastEnd() throws Exception
+	{
+		File file = File.createTempFile("lems", ".ts");
+		file.deleteOnExit();
+		LEMSTimeSeriesFile timeSeries = LEMSTimeSeriesFile.create(file, Arrays.asList("time"), 16);
+		try
+		{
+			timeSeries.read(0, 0);
+		}
+		finally
+		{
+			timeSeries.close();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2011 - 2015 OpenWorm.
+ * http://openworm.org
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the MIT License
+ * which accompanies this distribution, and is available at
+ * http://opensource.org/licenses/MIT
+ *
+ * Contributors:
+ *     	OpenWorm - http://openworm.org/people.html
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, 
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE 
+ * USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *******************************************************************************/
+package org.geppetto.simulator.jlems.test;
+
+import junit.framework.Assert;
+
+import org.geppetto.core.model.runtime.AspectSubTreeNode;
+import org.geppetto.core.model.runtime.AspectSubTreeNode.AspectTreeType;
+import org.geppetto.core.model.runtime.AspectNode;
+import org.geppetto.core.model.runtime.VariableNode;
+import org.geppetto.simulator.jlems.LEMSChangeTracker;
+import org.geppetto.simulator.jlems.LEMSResultsBuffer;
+import org.geppetto.simulator.jlems.LEMSSampler;
+import org.geppetto.simulator.jlems.LEMSStepController;
+import org.geppetto.simulator.jlems.LEMSWatchPlan;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LEMSWatchPlanTest
+{
+
+	private LEMSTestModel _model;
+	private LEMSResultsBuffer _results;
+	private LEMSWatchPlan _watchPlan;
+	private LEMSChangeTracker _changeTracker;
+	// the simulation time of the last row, as the time node of the tree would show it
+	private double _treeTime;
+	private int _timeSamples;
+
+	@Before
+	public void setup() throws Exception
+	{
+		_model = new LEMSTestModel("0.5");
+		_results = new LEMSResultsBuffer(1);
+		_changeTracker = new LEMSChangeTracker();
+		AspectSubTreeNode simulationTree = new AspectNode("electrical").getSubTree(AspectTreeType.SIMULATION_TREE);
+		_watchPlan = new LEMSWatchPlan();
+		_watchPlan.add(new VariableNode("x"), LEMSTestModel.X0, simulationTree);
+		_watchPlan.add(new VariableNode("x"), LEMSTestModel.X1, simulationTree);
+		_watchPlan.compile(null);
+		_treeTime = 0;
+		_timeSamples = 0;
+	}
+
+	/**
+	 * Advances the model, updates the plan and checks that every variable got a value for every time sample
+	 * 
+	 * @param steps
+	 * @return the number of rows added
+	 * @throws Exception
+	 */
+	private int step(int steps) throws Exception
+	{
+		_model.advance(_results, steps);
+		int quantities = _watchPlan.update(_results, _changeTracker);
+		int rows = _watchPlan.getRows();
+		Assert.assertEquals(rows * _watchPlan.size(), quantities);
+		for(int row = 0; row < rows; row++)
+		{
+			double time = _watchPlan.getRowTime(row);
+			Assert.assertTrue(time >= _treeTime);
+			_treeTime = time;
+			_timeSamples++;
+		}
+		return rows;
+	}
+
+	@Test
+	public void testEveryStepByDefault() throws Exception
+	{
+		int rows = 0;
+		for(int steps : new int[] { 5, 5, 7 })
+		{
+			Assert.assertEquals(steps, step(steps));
+			rows += steps;
+		}
+		Assert.assertEquals(17, _timeSamples);
+		Assert.assertEquals(17, rows);
+		Assert.assertEquals(_model.getTime(), _treeTime, 1e-12);
+	}
+
+	@Test
+	public void testLastStepOnly() throws Exception
+	{
+		_watchPlan.setFeedAllSamples(false);
+		for(int steps : new int[] { 5, 5, 7 })
+		{
+			Assert.assertEquals(1, step(steps));
+			// the single time sample of the batch is at its end
+			Assert.assertEquals(_model.getTime(), _treeTime, 1e-12);
+		}
+		Assert.assertEquals(3, _timeSamples);
+	}
+
+	@Test
+	public void testSampledRows() throws Exception
+	{
+		_watchPlan.setSampler(LEMSSampler.create("every:4"));
+		Assert.assertEquals(0, step(3));
+		Assert.assertEquals(2, step(6));
+		Assert.assertEquals(2, step(7));
+		Assert.assertEquals(4, _timeSamples);
+		// the rows are shown at the time of the kept steps
+		Assert.assertEquals(16 * _model.getRunConfig().getTimestep(), _treeTime, 1e-12);
+	}
+
+	@Test
+	public void testEnvelopeRows() throws Exception
+	{
+		_watchPlan.setSampler(LEMSSampler.create("envelope:4"));
+		Assert.assertEquals(4, step(8));
+		double timestep = _model.getRunConfig().getTimestep();
+		// both rows of a window are shown at the time of its last step
+		Assert.assertEquals(4 * timestep, _watchPlan.getRowTime(0), 1e-12);
+		Assert.assertEquals(4 * timestep, _watchPlan.getRowTime(1), 1e-12);
+		Assert.assertEquals(8 * timestep, _watchPlan.getRowTime(3), 1e-12);
+		Assert.assertEquals(2, step(5));
+		Assert.assertEquals(6, _timeSamples);
+	}
+
+	@Test
+	public void testAdaptiveBatches() throws Exception
+	{
+		LEMSStepController stepController = new LEMSStepController(0.01, 1, 64);
+		int steps = 0;
+		int batchSizes = 0;
+		int lastSize = -1;
+		while(steps < 500)
+		{
+			int batch = stepController.getSteps();
+			if(batch != lastSize)
+			{
+				batchSizes++;
+				lastSize = batch;
+			}
+			Assert.assertEquals(batch, step(batch));
+			stepController.update(_results);
+			steps += batch;
+		}
+		// the decay slows down so the batches grow, every step still gets a time sample
+		Assert.assertTrue(batchSizes > 1);
+		Assert.assertEquals(steps, _timeSamples);
+		Assert.assertEquals(_model.getTime(), _treeTime, 1e-9);
+	}
+}